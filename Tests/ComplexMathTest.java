@@ -1,3 +1,4 @@
+import complex_classes.ComplexGateEnums;
 import complex_classes.ComplexMath;
 import complex_classes.ComplexMatrix;
 import complex_classes.ComplexNumber;
@@ -174,4 +175,57 @@ class ComplexMathTest {
             }
         }
     }
+
+    @Test
+    void testPrimitiveArithmeticMatchesComplexNumbers() {
+        ComplexMatrix left = new ComplexMatrix(2, 3);
+        ComplexMatrix right = new ComplexMatrix(3, 2);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 3; j++) {
+                left.set(i, j, new ComplexNumber(0.3 * i - 0.7 * j, 0.25 + i * j));
+                right.set(j, i, new ComplexNumber(Math.sqrt(0.5) * (j + 1), -0.1 * i));
+            }
+        }
+        ComplexMatrix expected = ComplexMath.multiplyMatrix(left, right);
+        double[] result = new double[2 * 2 * 2];
+        ComplexMath.multiplyMatrix(ComplexMath.toInterleaved(left), ComplexMath.toInterleaved(right), result, 2, 3, 2,
+                true);
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                assertEquals(expected.get(i, j).getReal(), result[2 * (i * 2 + j)]);
+                assertEquals(expected.get(i, j).getImag(), result[2 * (i * 2 + j) + 1]);
+            }
+        }
+
+        // The clamp is opt-in, without it the product keeps its rounding error.
+        double[] nearOne = {0.99999999, 0.0};
+        double[] acc = {0.0, 0.0};
+        ComplexMath.multiplyAccumulate(nearOne, 0, new double[]{1.0, 0.0}, 0, acc, 0, false);
+        assertEquals(0.99999999, acc[0]);
+        ComplexMath.multiply(nearOne, 0, new double[]{1.0, 0.0}, 0, acc, 0, true);
+        assertEquals(1.0, acc[0]);
+        ComplexMath.addInPlace(acc, 0, nearOne, 0, false);
+        assertEquals(1.99999999, acc[0]);
+    }
+
+    @Test
+    void testGateConstantsAreImmutable() {
+        ComplexMatrix hadamard = ComplexGateEnums.HADAMARD.getMatrix();
+        assertTrue(hadamard.isImmutable());
+        hadamard.get(1, 1).setReal(5.0);
+        assertEquals(-1 / Math.sqrt(2), hadamard.getReal(1, 1));
+        boolean rejected = false;
+        try {
+            hadamard.set(0, 0, new ComplexNumber(0));
+        } catch (UnsupportedOperationException e) {
+            rejected = true;
+        }
+        assertTrue(rejected);
+
+        ComplexMatrix copy = ComplexMatrix.immutableCopy(ComplexMath.tensorMultiply(
+                ComplexGateEnums.S_GATE.getMatrix(), ComplexGateEnums.PAULI_X.getMatrix()));
+        assertTrue(copy == ComplexMatrix.immutableCopy(copy));
+        assertEquals(1.0, copy.getReal(0, 1));
+        assertEquals(1.0, copy.get(3, 2).getImag());
+    }
 }
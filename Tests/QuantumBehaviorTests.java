@@ -1,8 +1,37 @@
 import complex_classes.ComplexMath;
+import complex_classes.ComplexMatrix;
+import complex_classes.ComplexNumber;
 import interpreter.jqs;
+import measurement.GateDirector;
 import org.junit.jupiter.api.Test;
+import state.DenseStateVector;
+import state.GateOpcode;
+import state.Precision;
+import state.SparseStateVector;
+import state.StateOptions;
+import state.StateTracker;
+import state.StateVector;
+import state.StorageMode;
+import state.WorkItem;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static complex_classes.ComplexGateEnums.HADAMARD;
+import static complex_classes.ComplexGateEnums.PAULI_X;
+import static complex_classes.ComplexGateEnums.S_GATE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
 
 public class QuantumBehaviorTests {
 
@@ -717,4 +746,665 @@ public class QuantumBehaviorTests {
                 "{0.000°} 0.70711 |011⟩\n" +
                 "{0.000°} 0.70711 |101⟩", ComplexMath.complexMatrixToDiracNotation(jqs.getStateVec()));
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSingleQubitGatesOnWideRegister() {
+        //20 qubits would need a 2^20 x 2^20 operator per gate, the in place kernel only touches the state vector
+        jqs jqs = new jqs(20);
+        jqs.X(19);
+        jqs.H(0);
+        jqs.H(0);
+        jqs.X(0);
+        jqs.S(0);
+        jqs.getComputationalState();
+        assertEquals("|ψ⟩ = \n" +
+                "{phase} amplitude |basis⟩ \n" +
+                "-------------------------\n" +
+                "{90.000°} 1.00000i |10000000000000000001⟩", ComplexMath.complexMatrixToDiracNotation(jqs.getStateVec()));
+    }
+
+    @Test
+    void testControlledKernelGates() {
+        jqs jqs = new jqs(2);
+        jqs.X(0);
+        jqs.CH(0, 1);
+        jqs.getComputationalState();
+        assertEquals("|ψ⟩ = \n" +
+                "{phase} amplitude |basis⟩ \n" +
+                "-------------------------\n" +
+                "{0.000°} 0.70711 |01⟩\n" +
+                "{0.000°} 0.70711 |11⟩", ComplexMath.complexMatrixToDiracNotation(jqs.getStateVec()));
+
+        jqs = new jqs(2);
+        jqs.X(1);
+        jqs.CGate("RY", 1, 0, Math.PI);
+        jqs.CGate("RY", 0, 1, Math.PI);
+        jqs.getComputationalState();
+        assertEquals("|ψ⟩ = \n" +
+                "{phase} amplitude |basis⟩ \n" +
+                "-------------------------\n" +
+                "{180.000°} -1.00000 |01⟩", ComplexMath.complexMatrixToDiracNotation(jqs.getStateVec()));
+    }
+
+    @Test
+    void testOffHeapStateMatchesHeapState() {
+        StateOptions offHeap = new StateOptions();
+        offHeap.setStorageMode(StorageMode.OFF_HEAP);
+        try (jqs heapJqs = new jqs(4); jqs offHeapJqs = new jqs(4, offHeap)) {
+            for (jqs circuit : new jqs[]{heapJqs, offHeapJqs}) {
+                circuit.X(0);
+                circuit.H(1);
+                circuit.T(1);
+                circuit.CX(1, 2);
+                circuit.CSWAP(2, 0, 3);
+                circuit.getComputationalState();
+                circuit.QFT();
+            }
+            assertEquals(heapJqs.toString(), offHeapJqs.toString());
+            assertEquals(heapJqs.getStateVec().toString(), offHeapJqs.getStateVec().toString());
+        }
+    }
+
+    @Test
+    void testSinglePrecisionStateMatchesDoublePrecision() {
+        try (jqs doubleJqs = new jqs(4); jqs singleJqs = new jqs(4, Precision.SINGLE)) {
+            for (jqs circuit : new jqs[]{doubleJqs, singleJqs}) {
+                circuit.H(0);
+                circuit.T(0);
+                circuit.CX(0, 1);
+                circuit.RY(Math.PI / 3, 2);
+                circuit.CSWAP(2, 1, 3);
+                circuit.getComputationalState();
+                circuit.QFT();
+            }
+            assertEquals(doubleJqs.toString(), singleJqs.toString());
+        }
+    }
+
+    @Test
+    void testMappedStateMatchesHeapState() throws IOException {
+        Path scratch = Files.createTempDirectory("jqsim-test");
+        StateOptions mapped = new StateOptions();
+        mapped.setStorageMode(StorageMode.MAPPED);
+        mapped.setMappedDirectory(scratch);
+        mapped.setMappedChunkSize(4);
+        try (jqs heapJqs = new jqs(5); jqs mappedJqs = new jqs(5, mapped)) {
+            for (jqs circuit : new jqs[]{heapJqs, mappedJqs}) {
+                circuit.H(0);
+                circuit.H(4);
+                circuit.CX(4, 1);
+                circuit.CH(0, 3);
+                circuit.T(3);
+                circuit.CSWAP(1, 2, 4);
+                circuit.getComputationalState();
+                circuit.QFT();
+            }
+            assertEquals(heapJqs.toString(), mappedJqs.toString());
+            assertEquals(heapJqs.getStateVec().toString(), mappedJqs.getStateVec().toString());
+        }
+        try (Stream<Path> files = Files.list(scratch)) {
+            assertEquals(0, files.count());
+        }
+        Files.delete(scratch);
+    }
+
+    @Test
+    void testSparseStateMatchesDenseState() {
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (jqs denseJqs = new jqs(5); jqs sparseJqs = new jqs(5, sparse)) {
+            for (jqs circuit : new jqs[]{denseJqs, sparseJqs}) {
+                circuit.X(0);
+                circuit.H(1);
+                circuit.S(1);
+                circuit.CX(1, 2);
+                circuit.CZ(2, 0);
+                circuit.SWAP(0, 4);
+                circuit.TOF(1, 2, 3);
+                circuit.CSWAP(3, 0, 4);
+                circuit.CGate("RY", 1, 0, Math.PI / 5);
+                circuit.getComputationalState();
+                circuit.QFT();
+            }
+            assertEquals(denseJqs.toString(), sparseJqs.toString());
+            assertEquals(denseJqs.getStateVec().toString(), sparseJqs.getStateVec().toString());
+        }
+    }
+
+    @Test
+    void testSparseGhzStateOnFortyQubits() {
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (jqs ghz = new jqs(40, sparse)) {
+            ghz.H(0);
+            for (int i = 1; i < 40; i++) {
+                ghz.CX(0, i);
+            }
+            ghz.getComputationalState();
+            assertEquals("|ψ⟩ = \n{phase} amplitude |basis⟩ \n-------------------------\n"
+                    + "{0.000°} 0.70711 |" + "0".repeat(40) + "⟩\n"
+                    + "{0.000°} 0.70711 |" + "1".repeat(40) + "⟩", ghz.toString());
+        }
+    }
+
+    @Test
+    void testAdaptiveStateSwitchesBetweenSparseAndDense() {
+        StateOptions adaptive = new StateOptions();
+        adaptive.setStorageMode(StorageMode.ADAPTIVE);
+        adaptive.setSparseToDenseThreshold(1.0 / 8);
+        adaptive.setDenseToSparseThreshold(1.0 / 16);
+        try (StateTracker tracker = new StateTracker(8, adaptive); StateTracker dense = new StateTracker(8)) {
+            GateDirector adaptiveGates = new GateDirector(tracker);
+            GateDirector denseGates = new GateDirector(dense);
+            List<WorkItem> circuit = new ArrayList<>();
+            circuit.add(new WorkItem("X", 3));
+            circuit.add(new WorkItem("CX", 3, 5));
+            for (int i = 0; i < 8; i++) {
+                circuit.add(new WorkItem("H", i));
+            }
+            for (WorkItem gate : circuit) {
+                adaptiveGates.applyGate(gate);
+                denseGates.applyGate(gate);
+                if (gate.getOperator().equals("CX")) {
+                    assertTrue(tracker.getState() instanceof SparseStateVector);
+                }
+            }
+            assertTrue(tracker.getState() instanceof DenseStateVector);
+            for (int i = 0; i < 8; i++) {
+                adaptiveGates.applyGate(new WorkItem("H", i));
+                denseGates.applyGate(new WorkItem("H", i));
+            }
+            assertTrue(tracker.getState() instanceof SparseStateVector);
+            assertEquals(dense.toDiracNotation(), tracker.toDiracNotation());
+        }
+    }
+
+    @Test
+    void testStateOptionsRejectValuesOutOfRange() {
+        StateOptions options = new StateOptions();
+        assertThrows(IllegalArgumentException.class, () -> options.setMappedChunkSize(2));
+        assertThrows(IllegalArgumentException.class, () -> options.setMappedChunkSize(48));
+        assertThrows(IllegalArgumentException.class, () -> options.setHeapBlockSize(1L << 30));
+        assertThrows(IllegalArgumentException.class, () -> options.setHeapBlockSize(12));
+        assertThrows(IllegalArgumentException.class, () -> options.setCacheBlockQubits(-1));
+        assertThrows(IllegalArgumentException.class, () -> options.setFusionQubits(0));
+        assertThrows(IllegalArgumentException.class, () -> options.setFusionQubits(7));
+        options.setMappedChunkSize(4);
+        options.setHeapBlockSize(1L << 29);
+        options.setCacheBlockQubits(0);
+        options.setFusionQubits(6);
+        assertEquals(4, options.getMappedChunkSize());
+        assertEquals(1L << 29, options.getHeapBlockSize());
+        assertEquals(0, options.getCacheBlockQubits());
+        assertEquals(6, options.getFusionQubits());
+    }
+
+    @Test
+    void testBlockedStateMatchesHeapState() {
+        StateOptions blocked = new StateOptions();
+        blocked.setStorageMode(StorageMode.BLOCKED);
+        blocked.setHeapBlockSize(8);
+        try (jqs heapJqs = new jqs(6); jqs blockedJqs = new jqs(6, blocked)) {
+            for (jqs circuit : new jqs[]{heapJqs, blockedJqs}) {
+                circuit.H(5);
+                circuit.H(1);
+                circuit.CX(5, 0);
+                circuit.CH(1, 4);
+                circuit.S(4);
+                circuit.TOF(0, 4, 2);
+                circuit.CXX(2, 3, 5);
+                circuit.getComputationalState();
+                circuit.QFT();
+            }
+            assertEquals(heapJqs.getStateVec().toString(), blockedJqs.getStateVec().toString());
+        }
+    }
+
+    @Test
+    void testVectorKernelsMatchScalarKernels() {
+        // Blocked storage always runs the scalar kernels, the heap state runs the SIMD kernels when they are enabled.
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                        && !"false".equals(System.getProperty("jqs.vector")),
+                "The SIMD kernels need --add-modules jdk.incubator.vector");
+        StateOptions blocked = new StateOptions();
+        blocked.setStorageMode(StorageMode.BLOCKED);
+        blocked.setHeapBlockSize(16);
+        try (jqs heapJqs = new jqs(9); jqs blockedJqs = new jqs(9, blocked)) {
+            for (jqs circuit : new jqs[]{heapJqs, blockedJqs}) {
+                circuit.H(8);
+                circuit.H(4);
+                circuit.RY(Math.PI / 7, 6);
+                circuit.T(4);
+                circuit.CH(8, 5);
+                circuit.CGate("RZ", 6, 7, Math.PI / 3);
+                circuit.CX(4, 3);
+                circuit.TOF(8, 6, 7);
+                circuit.CSWAP(3, 5, 8);
+                circuit.SWAP(4, 6);
+                circuit.XCGate("H", new int[]{5}, new int[]{4, 7});
+                circuit.getComputationalState();
+                circuit.QFT();
+            }
+            assertEquals(heapJqs.toString(), blockedJqs.toString());
+        }
+    }
+
+    @Test
+    void testParallelKernelsMatchSequentialKernels() {
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            StateOptions parallel = new StateOptions();
+            parallel.setParallelPool(pool);
+            parallel.setParallelThreshold(1);
+            StateOptions parallelBlocked = new StateOptions();
+            parallelBlocked.setStorageMode(StorageMode.BLOCKED);
+            parallelBlocked.setHeapBlockSize(1L << 10);
+            parallelBlocked.setParallelPool(pool);
+            parallelBlocked.setParallelThreshold(1);
+            StateOptions sequential = new StateOptions();
+            sequential.setParallelThreshold(63);
+            try (jqs sequentialJqs = new jqs(15, sequential); jqs parallelJqs = new jqs(15, parallel);
+                 jqs blockedJqs = new jqs(15, parallelBlocked)) {
+                for (jqs circuit : new jqs[]{sequentialJqs, parallelJqs, blockedJqs}) {
+                    for (int qubit = 0; qubit < 15; qubit += 2) {
+                        circuit.H(qubit);
+                    }
+                    circuit.RY(Math.PI / 7, 1);
+                    circuit.T(14);
+                    circuit.CH(0, 13);
+                    circuit.CGate("RZ", 12, 3, Math.PI / 3);
+                    circuit.CZ(2, 14);
+                    circuit.TOF(4, 6, 11);
+                    circuit.CSWAP(0, 1, 14);
+                    circuit.ISWAP(5, 9);
+                    circuit.XCGate("H", new int[]{10}, new int[]{7, 3});
+                    circuit.getComputationalState();
+                }
+                assertEquals(sequentialJqs.getStateVec().toString(), parallelJqs.getStateVec().toString());
+                assertEquals(sequentialJqs.getStateVec().toString(), blockedJqs.getStateVec().toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testCacheBlockedSweepsMatchGateByGate() {
+        StateOptions gateByGate = new StateOptions();
+        gateByGate.setCacheBlockQubits(0);
+        StateOptions swept = new StateOptions();
+        swept.setCacheBlockQubits(3);
+        StateOptions sweptBlocked = new StateOptions();
+        sweptBlocked.setCacheBlockQubits(3);
+        sweptBlocked.setStorageMode(StorageMode.BLOCKED);
+        sweptBlocked.setHeapBlockSize(16);
+        try (jqs gateByGateJqs = new jqs(7, gateByGate); jqs sweptJqs = new jqs(7, swept);
+             jqs blockedJqs = new jqs(7, sweptBlocked)) {
+            for (jqs circuit : new jqs[]{gateByGateJqs, sweptJqs, blockedJqs}) {
+                circuit.H(6);
+                circuit.H(0);
+                circuit.RY(Math.PI / 5, 1);
+                circuit.CX(0, 2);
+                circuit.T(2);
+                circuit.ISWAP(1, 2);
+                circuit.CH(6, 4);
+                circuit.H(5);
+                circuit.CZ(0, 1);
+                circuit.SWAP(2, 0);
+                circuit.CXX(1, 0, 2);
+                circuit.CCGate("H", 0, 2, 1);
+                circuit.CGate("RZ", 1, 0, Math.PI / 3);
+                circuit.TOF(5, 6, 3);
+                circuit.getComputationalState();
+            }
+            assertEquals(gateByGateJqs.toString(), sweptJqs.toString());
+            assertEquals(gateByGateJqs.toString(), blockedJqs.toString());
+            assertEquals(gateByGateJqs.getStateVec().toString(), sweptJqs.getStateVec().toString());
+            assertEquals(gateByGateJqs.getStateVec().toString(), blockedJqs.getStateVec().toString());
+        }
+    }
+
+    @Test
+    void testCacheBlockedSweepsRunInParallel() {
+        AtomicInteger invocations = new AtomicInteger();
+        ForkJoinPool pool = new ForkJoinPool(4) {
+            @Override
+            public <T> T invoke(ForkJoinTask<T> task) {
+                invocations.incrementAndGet();
+                return super.invoke(task);
+            }
+        };
+        try {
+            StateOptions swept = new StateOptions();
+            swept.setParallelPool(pool);
+            StateOptions sequential = new StateOptions();
+            sequential.setParallelThreshold(63);
+            // At the parallel threshold with the default cache block, the state has only 2^4 blocks.
+            int qubits = swept.getParallelThreshold();
+            try (jqs sweptJqs = new jqs(qubits, swept); jqs sequentialJqs = new jqs(qubits, sequential)) {
+                for (jqs circuit : new jqs[]{sweptJqs, sequentialJqs}) {
+                    circuit.H(0);
+                    circuit.H(1);
+                    circuit.CX(0, 2);
+                    circuit.T(2);
+                    circuit.getComputationalState();
+                }
+                assertEquals(1, invocations.get());
+                assertEquals(sequentialJqs.getStateVec().toString(), sweptJqs.getStateVec().toString());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testRunsOnHighQubitsAreRelabeledLow() {
+        StateOptions gateByGate = new StateOptions();
+        gateByGate.setCacheBlockQubits(0);
+        StateOptions relabeled = new StateOptions();
+        relabeled.setCacheBlockQubits(3);
+        try (jqs gateByGateJqs = new jqs(8, gateByGate); jqs relabeledJqs = new jqs(8, relabeled)) {
+            for (jqs circuit : new jqs[]{gateByGateJqs, relabeledJqs}) {
+                circuit.H(7);
+                circuit.H(5);
+                circuit.CX(7, 2);
+                circuit.RY(Math.PI / 7, 5);
+                circuit.CZ(5, 2);
+                circuit.T(7);
+                circuit.H(6);
+                circuit.CH(6, 0);
+                circuit.SWAP(0, 6);
+                circuit.ISWAP(6, 4);
+                circuit.CCGate("H", 0, 6, 4);
+                circuit.X(3);
+                circuit.CX(3, 1);
+                circuit.getComputationalState();
+            }
+            assertEquals(gateByGateJqs.toString(), relabeledJqs.toString());
+            assertEquals(gateByGateJqs.getStateVec().toString(), relabeledJqs.getStateVec().toString());
+        }
+    }
+
+    @Test
+    void testSwapRelabelsQubitsUntilRead() {
+        try (StateTracker relabeled = new StateTracker(4); StateTracker reference = new StateTracker(4)) {
+            StateVector original = relabeled.getState();
+            GateDirector gates = new GateDirector(relabeled);
+            GateDirector referenceGates = new GateDirector(reference);
+            for (GateDirector director : new GateDirector[]{gates, referenceGates}) {
+                director.applyGate(new WorkItem("H", 0));
+                director.applyGate(new WorkItem("RY", 2, Math.PI / 3));
+            }
+            gates.applyGate(new WorkItem("SWAP", 0, 3));
+            assertTrue(relabeled.getQubitOrder() != null);
+            gates.applyGate(new WorkItem("CX", 3, 1));
+            gates.applyGate(new WorkItem("SWAP", 1, 2));
+            gates.applyGate(new WorkItem("T", 2));
+            // SWAP(a, b) written as three CX gates always moves the amplitudes
+            for (int[] swap : new int[][]{{0, 3}, {3, 0}, {0, 3}}) {
+                referenceGates.applyGate(new WorkItem("CX", swap[0], swap[1]));
+            }
+            referenceGates.applyGate(new WorkItem("CX", 3, 1));
+            for (int[] swap : new int[][]{{1, 2}, {2, 1}, {1, 2}}) {
+                referenceGates.applyGate(new WorkItem("CX", swap[0], swap[1]));
+            }
+            referenceGates.applyGate(new WorkItem("T", 2));
+            assertEquals(reference.toDiracNotation(), relabeled.toDiracNotation());
+            assertTrue(relabeled.getQubitOrder() == null);
+            assertTrue(original == relabeled.getState());
+        }
+    }
+
+    @Test
+    void testFusedSingleQubitGatesMatchUnfused() {
+        StateOptions fused = new StateOptions();
+        fused.setGateFusion(true);
+        try (jqs unfusedJqs = new jqs(3); jqs fusedJqs = new jqs(3, fused)) {
+            for (jqs circuit : new jqs[]{unfusedJqs, fusedJqs}) {
+                circuit.H(0);
+                circuit.T(0);
+                circuit.H(2);
+                circuit.H(0);
+                circuit.S(0);
+                circuit.RZ(Math.PI / 5, 0);
+                circuit.CX(0, 1);
+                circuit.H(1);
+                circuit.Y(1);
+                circuit.RX(Math.PI / 3, 1);
+                circuit.X(2);
+                circuit.X(2);
+                circuit.T(2);
+                circuit.getComputationalState();
+            }
+            assertEquals(unfusedJqs.toString(), fusedJqs.toString());
+        }
+    }
+
+    @Test
+    void testFusedBlocksMatchUnfused() {
+        StateOptions blocks = new StateOptions();
+        blocks.setGateFusion(true);
+        blocks.setFusionQubits(4);
+        try (jqs unfusedJqs = new jqs(5); jqs fusedJqs = new jqs(5, blocks)) {
+            for (jqs circuit : new jqs[]{unfusedJqs, fusedJqs}) {
+                for (int qubit = 0; qubit < 5; qubit++) {
+                    circuit.H(qubit);
+                }
+                for (int layer = 0; layer < 2; layer++) {
+                    for (int qubit = 0; qubit < 4; qubit++) {
+                        circuit.CX(qubit, qubit + 1);
+                        circuit.RZ(Math.PI / (3 + layer), qubit + 1);
+                        circuit.CX(qubit, qubit + 1);
+                    }
+                    for (int qubit = 0; qubit < 5; qubit++) {
+                        circuit.RX(Math.PI / (5 + qubit), qubit);
+                    }
+                }
+                circuit.CZ(4, 0);
+                circuit.ISWAP(1, 3);
+                circuit.CH(2, 0);
+                circuit.TOF(0, 1, 4);
+                circuit.SWAP(0, 2);
+                circuit.CY(3, 2);
+                circuit.getComputationalState();
+            }
+            assertEquals(unfusedJqs.toString(), fusedJqs.toString());
+        }
+    }
+
+    @Test
+    void testGateOpcodeProperties() {
+        assertTrue(new WorkItem("CR1i", 0, 1, Math.PI / 4).getOpcode() == GateOpcode.CR1I);
+        assertTrue(GateOpcode.CR1I.getTarget() == GateOpcode.R1I);
+        assertTrue(GateOpcode.CR1I.isDiagonal() && !GateOpcode.CR1I.isPermutation());
+        assertTrue(GateOpcode.TOFFOLI.isPermutation() && !GateOpcode.TOFFOLI.isDiagonal());
+        assertTrue(GateOpcode.ID.isPermutation() && GateOpcode.ID.isDiagonal());
+        assertTrue(!GateOpcode.ISWAP.isPermutation() && !GateOpcode.H.isDiagonal());
+        assertEquals(3, GateOpcode.TOFFOLI.getQubits());
+        assertEquals("CSi", GateOpcode.controlledSymbol("Si"));
+        assertEquals("CQ", GateOpcode.controlledSymbol("Q"));
+        assertTrue(new WorkItem("Q", 0).getOpcode() == null);
+    }
+
+    @Test
+    void testOutOfPlaceGatesReuseScratchState() {
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (StateTracker tracker = new StateTracker(3, sparse)) {
+            GateDirector gates = new GateDirector(tracker);
+            gates.applyGate(new WorkItem("X", 0));
+            StateVector first = tracker.getState();
+            gates.applyGate(new WorkItem("CXX", 0, 1, 2));
+            StateVector second = tracker.getState();
+            assertFalse(first == second);
+            assertTrue(first == tracker.getScratch());
+            gates.applyGate(new WorkItem("TOFFOLI", new Integer[]{0, 1}, new Integer[]{2}));
+            assertTrue(first == tracker.getState());
+            assertTrue(second == tracker.getScratch());
+            assertEquals("|ψ⟩ = \n{phase} amplitude |basis⟩ \n-------------------------\n{0.000°} 1.00000 |011⟩",
+                    tracker.toDiracNotation());
+        }
+
+        // Dense permutations move amplitudes in place and never allocate a scratch.
+        try (StateTracker tracker = new StateTracker(3)) {
+            GateDirector gates = new GateDirector(tracker);
+            StateVector state = tracker.getState();
+            gates.applyGate(new WorkItem("X", 0));
+            gates.applyGate(new WorkItem("CX", 0, 1));
+            gates.applyGate(new WorkItem("CXX", 1, 0, 2));
+            gates.applyGate(new WorkItem("CSWAP", 2, 0, 1));
+            gates.applyGate(new WorkItem("TOFFOLI", new Integer[]{1, 2}, new Integer[]{0}));
+            assertTrue(state == tracker.getState());
+            assertFalse(tracker.hasScratch());
+        }
+    }
+
+    @Test
+    void testPermutationGatesSwapInPlace() {
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (StateTracker dense = new StateTracker(5); StateTracker reference = new StateTracker(5, sparse)) {
+            StateVector original = dense.getState();
+            for (StateTracker tracker : new StateTracker[]{dense, reference}) {
+                GateDirector gates = new GateDirector(tracker);
+                gates.applyGate(new WorkItem("H", 0));
+                gates.applyGate(new WorkItem("RY", 3, Math.PI / 3));
+                gates.applyGate(new WorkItem("X", 1));
+                gates.applyGate(new WorkItem("CX", 0, 2));
+                gates.applyGate(new WorkItem("SWAP", 1, 4));
+                gates.applyGate(new WorkItem("TOFFOLI", new Integer[]{0, 2}, new Integer[]{3}));
+                gates.applyGate(new WorkItem("CXX", new Integer[]{3}, new Integer[]{1, 4}));
+                gates.applyGate(new WorkItem("CSWAP", new Integer[]{4}, new Integer[]{0, 3}));
+                gates.applyGate(new WorkItem("X", new Integer[]{0}, new Integer[]{1, 2, 4}));
+            }
+            assertTrue(original == dense.getState());
+            assertEquals(reference.toDiracNotation(), dense.toDiracNotation());
+        }
+    }
+
+    @Test
+    void testTwoQubitGates() {
+        try (jqs flip = new jqs(2)) {
+            flip.X(0);
+            flip.ISWAP(0, 1);
+            flip.getComputationalState();
+            assertEquals("|ψ⟩ = \n{phase} amplitude |basis⟩ \n-------------------------\n{-90.000°} -1.00000i |10⟩",
+                    flip.toString());
+        }
+
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (jqs denseJqs = new jqs(4); jqs sparseJqs = new jqs(4, sparse)) {
+            for (jqs circuit : new jqs[]{denseJqs, sparseJqs}) {
+                circuit.H(0);
+                circuit.RY(Math.PI / 3, 2);
+                circuit.ISWAP(0, 2);
+                circuit.T(2);
+                circuit.ISWAP(3, 0);
+                circuit.getComputationalState();
+            }
+            assertEquals(denseJqs.toString(), sparseJqs.toString());
+        }
+    }
+
+    @Test
+    void testOperatorOnChosenQubits() {
+        ComplexMatrix toffoli = new ComplexMatrix(8, 8);
+        for (int row = 0; row < 8; row++) {
+            for (int col = 0; col < 8; col++) {
+                boolean one = row < 6 ? row == col : row + col == 13;
+                toffoli.set(row, col, new ComplexNumber(one ? 1 : 0, 0));
+            }
+        }
+        ComplexMatrix product = ComplexMath.tensorMultiply(HADAMARD.getMatrix(),
+                ComplexMath.tensorMultiply(S_GATE.getMatrix(), PAULI_X.getMatrix()));
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (StateTracker gates = new StateTracker(4); StateTracker dense = new StateTracker(4);
+             StateTracker sparseTracker = new StateTracker(4, sparse)) {
+            for (StateTracker tracker : new StateTracker[]{gates, dense, sparseTracker}) {
+                GateDirector director = new GateDirector(tracker);
+                director.applyGate(new WorkItem("H", 0));
+                director.applyGate(new WorkItem("RY", 3, Math.PI / 3));
+                if (tracker == gates) {
+                    director.applyGate(new WorkItem("TOFFOLI", new Integer[]{3, 0}, new Integer[]{2}));
+                    director.applyGate(new WorkItem("H", 2));
+                    director.applyGate(new WorkItem("S", 0));
+                    director.applyGate(new WorkItem("X", 1));
+                } else {
+                    director.applyOperator(toffoli, 3, 0, 2);
+                    director.applyOperator(product, 2, 0, 1);
+                }
+            }
+            assertEquals(gates.toDiracNotation(), dense.toDiracNotation());
+            assertEquals(gates.toDiracNotation(), sparseTracker.toDiracNotation());
+        }
+    }
+
+    @Test
+    void testMultiControlledGates() {
+        try (jqs ccGate = new jqs(3); jqs toffoli = new jqs(3)) {
+            for (jqs circuit : new jqs[]{ccGate, toffoli}) {
+                circuit.H(0);
+                circuit.H(1);
+            }
+            ccGate.CCGate("X", 0, 1, 2);
+            toffoli.TOF(0, 1, 2);
+            ccGate.getComputationalState();
+            toffoli.getComputationalState();
+            assertEquals(toffoli.toString(), ccGate.toString());
+        }
+
+        StateOptions sparse = new StateOptions();
+        sparse.setStorageMode(StorageMode.SPARSE);
+        try (jqs denseJqs = new jqs(4); jqs sparseJqs = new jqs(4, sparse)) {
+            for (jqs circuit : new jqs[]{denseJqs, sparseJqs}) {
+                circuit.X(0);
+                circuit.X(1);
+                circuit.XCGate("H", new int[]{0, 1}, new int[]{2, 3});
+                circuit.getComputationalState();
+            }
+            assertEquals("|ψ⟩ = \n{phase} amplitude |basis⟩ \n-------------------------\n"
+                    + "{0.000°} 0.50000 |0011⟩\n"
+                    + "{0.000°} 0.50000 |0111⟩\n"
+                    + "{0.000°} 0.50000 |1011⟩\n"
+                    + "{0.000°} 0.50000 |1111⟩", denseJqs.toString());
+            assertEquals(denseJqs.toString(), sparseJqs.toString());
+        }
+    }
+
+    @Test
+    void testUnknownMultiQubitGateIsRejected() {
+        for (StorageMode mode : new StorageMode[]{StorageMode.SPARSE, StorageMode.ADAPTIVE, StorageMode.HEAP}) {
+            StateOptions options = new StateOptions();
+            options.setStorageMode(mode);
+            try (StateTracker tracker = new StateTracker(3, options)) {
+                String message = null;
+                try {
+                    new GateDirector(tracker).applyGate(new WorkItem("Q", new Integer[]{0}, new Integer[]{1, 2}));
+                } catch (IllegalArgumentException e) {
+                    message = e.getMessage();
+                }
+                assertEquals("Unknown multi-qubit gate: Q", message);
+            }
+        }
+    }
+
+    @Test
+    void testDiagonalGates() {
+        try (jqs diagonal = new jqs(2)) {
+            diagonal.H(0);
+            diagonal.H(1);
+            diagonal.T(0);
+            diagonal.S(0);
+            diagonal.CGate("S", 0, 1);
+            diagonal.Z(1);
+            diagonal.getComputationalState();
+            assertEquals("|ψ⟩ = \n{phase} amplitude |basis⟩ \n-------------------------\n"
+                    + "{0.000°} 0.50000 |00⟩\n"
+                    + "{135.000°} (-0.35355 + 0.35355i) |01⟩\n"
+                    + "{180.000°} -0.50000 |10⟩\n"
+                    + "{45.000°} (0.35355 + 0.35355i) |11⟩", diagonal.toString());
+        }
+    }
+}
@@ -1,2 +1,37 @@
+import org.junit.jupiter.api.Test;
+import state.SparseStateVector;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
 public class SparseTests {
+
+    @Test
+    void testSparseStateVectorMatchesMap() {
+        SparseStateVector sparse = new SparseStateVector(1L << 40);
+        Map<Long, Double> expected = new HashMap<>();
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            long index = random.nextInt(512) * 0x10000001L;
+            double value = random.nextInt(3) == 0 ? 0.0 : random.nextDouble();
+            sparse.set(index, value, -value);
+            if (value == 0.0) {
+                expected.remove(index);
+            } else {
+                expected.put(index, value);
+            }
+        }
+        assertEquals(expected.size(), sparse.nonZeroCount());
+        for (long index : sparse.storedIndices()) {
+            assertEquals((double) expected.get(index), sparse.getReal(index));
+            assertEquals(-expected.get(index), sparse.getImag(index));
+        }
+        for (Map.Entry<Long, Double> entry : expected.entrySet()) {
+            assertEquals((double) entry.getValue(), sparse.getReal(entry.getKey()));
+        }
+        assertEquals(0.0, sparse.getReal(3));
+    }
 }
@@ -0,0 +1,63 @@
+package measurement;
+
+import complex_classes.ComplexMatrix;
+import org.junit.jupiter.api.Test;
+import state.GateOpcode;
+import state.WorkItem;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class GateMatrixCacheTest {
+
+    @Test
+    void testRepeatedAngleReturnsSameMatrix() {
+        ComplexMatrix first = GateDirector.decodeOperator(new WorkItem("RX", 0, 0.318));
+        ComplexMatrix second = GateDirector.decodeOperator(new WorkItem("CRX", 1, 2, 0.318));
+        assertTrue(first == second);
+        assertTrue(first.isImmutable());
+        assertFalse(first == GateDirector.decodeOperator(new WorkItem("RY", 0, 0.318)));
+    }
+
+    @Test
+    void testNegativeZeroIsSeparateKey() {
+        ComplexMatrix positive = GateDirector.decodeOperator(new WorkItem("RZ", 0, 0.0));
+        ComplexMatrix negative = GateDirector.decodeOperator(new WorkItem("RZ", 0, -0.0));
+        assertFalse(positive == negative);
+        assertEquals(0.0, positive.getImag(1, 1));
+        assertEquals(-0.0, negative.getImag(1, 1));
+    }
+
+    @Test
+    void testLeastRecentlyUsedAngleIsEvicted() {
+        // The cache is shared by the whole JVM, the fake matrices must not outlive the test.
+        GateMatrixCache.clear();
+        try {
+            int[] builds = new int[1];
+            double base = 0.5772156649;
+            for (int i = 0; i < GateMatrixCache.CAPACITY; i++) {
+                get(base + i * 1e-6, builds);
+            }
+            // Touch the first angle so the second one is now the least recently used.
+            get(base, builds);
+            assertEquals(GateMatrixCache.CAPACITY, builds[0]);
+            get(base + GateMatrixCache.CAPACITY * 1e-6, builds);
+            assertEquals(GateMatrixCache.CAPACITY, GateMatrixCache.size());
+
+            get(base, builds);
+            assertEquals(GateMatrixCache.CAPACITY + 1, builds[0]);
+            get(base + 1e-6, builds);
+            assertEquals(GateMatrixCache.CAPACITY + 2, builds[0]);
+        } finally {
+            GateMatrixCache.clear();
+        }
+    }
+
+    private static ComplexMatrix get(double theta, int[] builds) {
+        return GateMatrixCache.get(GateOpcode.R1, new WorkItem("R1", 0, theta), work -> {
+            builds[0]++;
+            return new ComplexMatrix(2, 2);
+        });
+    }
+}
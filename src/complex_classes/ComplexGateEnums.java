@@ -1,7 +1,8 @@
 package complex_classes;
 
 /**
- * Enum representing various quantum gates using complex matrices.
+ * Enum representing various quantum gates using complex matrices. The matrices are immutable and backed by primitive
+ * doubles, see {@link ComplexMatrix#immutableCopy(ComplexMatrix)}, so every user shares them safely.
  *
  * @author Robert Smith
  * @version 1.0
@@ -100,7 +101,7 @@ public enum ComplexGateEnums {
     }));
 
     /**
-     * The complex matrix associated with each gate.
+     * The immutable complex matrix associated with each gate.
      */
     private final ComplexMatrix matrix;
 
@@ -110,13 +111,13 @@ public enum ComplexGateEnums {
      * @param matrix the complex matrix associated with the gate
      */
     ComplexGateEnums(ComplexMatrix matrix) {
-        this.matrix = matrix;
+        this.matrix = ComplexMatrix.immutableCopy(matrix);
     }
 
     /**
      * Returns the complex matrix associated with the gate.
      *
-     * @return the complex matrix associated with the gate
+     * @return the immutable complex matrix associated with the gate
      */
     public ComplexMatrix getMatrix() {
         return matrix;
@@ -5,6 +5,12 @@ import static supportClasses.GreekEnums.*;
 /**
  * ComplexObject serves as the parent class for other complex classes, providing a single location for linear algebra
  * functions to be collected and giving universal access to those methods on each complex class.
+ * <p>
+ * Alongside the {@link ComplexNumber} methods there is a primitive layer that works on complex numbers stored as
+ * interleaved real and imaginary doubles, see {@link #toInterleaved(ComplexMatrix)}, and never allocates. Its methods
+ * take a clamp flag: true rounds every product and sum with {@link #testResultForFloatErrorBuildup(double)} exactly as
+ * the {@link ComplexNumber} methods do, false leaves the IEEE results as they are.
+ * </p>
  *
  * @author Robert Smith
  * @version 0.1
@@ -55,17 +61,173 @@ public final class ComplexMath {
                     + " cannot be multiplied with " + matrixTwo.getHeight()
                     + "x" + matrixTwo.getWidth());
         }
-        ComplexNumber[][] result = new ComplexNumber[matrixOne.getHeight()][matrixTwo.getWidth()];
-        for (int i = 0; i < matrixOne.getHeight(); i++) {
-            for (int j = 0; j < matrixTwo.getWidth(); j++) {
-                result[i][j] = new ComplexNumber();
-                for (int k = 0; k < matrixOne.getWidth(); k++) {
-                    result[i][j] = addComplexNumbers(
-                            result[i][j], multiplyComplexNumbers(
-                                    matrixOne.get(i, k), matrixTwo.get(k, j)));
+        double[] result = new double[2 * matrixOne.getHeight() * matrixTwo.getWidth()];
+        multiplyMatrix(toInterleaved(matrixOne), toInterleaved(matrixTwo), result, matrixOne.getHeight(),
+                matrixOne.getWidth(), matrixTwo.getWidth(), true);
+        return fromInterleaved(result, matrixOne.getHeight(), matrixTwo.getWidth());
+    }
+
+    /**
+     * Multiplies two matrices of interleaved complex numbers in row major order, see
+     * {@link #toInterleaved(ComplexMatrix)}. Each entry starts from 0 and adds the products in order, so with clamp set
+     * the result is the same bit for bit as {@link #multiplyMatrix(ComplexMatrix, ComplexMatrix)}.
+     *
+     * @param left   the rows x inner matrix
+     * @param right  the inner x cols matrix
+     * @param result the rows x cols matrix to write, not left or right
+     * @param rows   the number of rows of left
+     * @param inner  the number of columns of left and rows of right
+     * @param cols   the number of columns of right
+     * @param clamp  true to round every product and sum with {@link #testResultForFloatErrorBuildup(double)}
+     */
+    public static void multiplyMatrix(double[] left, double[] right, double[] result, int rows, int inner, int cols,
+                                      boolean clamp) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                int entry = 2 * (i * cols + j);
+                result[entry] = 0.0;
+                result[entry + 1] = 0.0;
+                for (int k = 0; k < inner; k++) {
+                    multiplyAccumulate(left, 2 * (i * inner + k), right, 2 * (k * cols + j), result, entry, clamp);
                 }
             }
         }
+    }
+
+    /**
+     * Returns the real part of the product of two complex numbers, a.real * b.real - a.imag * b.imag.
+     *
+     * @param aReal the real part of a
+     * @param aImag the imaginary part of a
+     * @param bReal the real part of b
+     * @param bImag the imaginary part of b
+     * @return the real part of a * b, not rounded
+     */
+    public static double multiplyReal(double aReal, double aImag, double bReal, double bImag) {
+        return aReal * bReal - aImag * bImag;
+    }
+
+    /**
+     * Returns the imaginary part of the product of two complex numbers, a.real * b.imag + a.imag * b.real.
+     *
+     * @param aReal the real part of a
+     * @param aImag the imaginary part of a
+     * @param bReal the real part of b
+     * @param bImag the imaginary part of b
+     * @return the imaginary part of a * b, not rounded
+     */
+    public static double multiplyImag(double aReal, double aImag, double bReal, double bImag) {
+        return aReal * bImag + aImag * bReal;
+    }
+
+    /**
+     * Adds one real or imaginary part of a product to a running sum.
+     *
+     * @param sum     the sum so far, 0.0 for the first product
+     * @param product the part of the product to add
+     * @param clamp   true to round the product and the sum with {@link #testResultForFloatErrorBuildup(double)}
+     * @return the new sum
+     */
+    public static double accumulate(double sum, double product, boolean clamp) {
+        if (clamp) {
+            return testResultForFloatErrorBuildup(sum + testResultForFloatErrorBuildup(product));
+        }
+        return sum + product;
+    }
+
+    /**
+     * Writes the product of two interleaved complex numbers, a * b, to result.
+     *
+     * @param a            the array holding a
+     * @param aOffset      the index of the real part of a
+     * @param b            the array holding b
+     * @param bOffset      the index of the real part of b
+     * @param result       the array to write the product to, may be a or b
+     * @param resultOffset the index to write the real part to
+     * @param clamp        true to round both parts with {@link #testResultForFloatErrorBuildup(double)}
+     */
+    public static void multiply(double[] a, int aOffset, double[] b, int bOffset, double[] result, int resultOffset,
+                                boolean clamp) {
+        double real = multiplyReal(a[aOffset], a[aOffset + 1], b[bOffset], b[bOffset + 1]);
+        double imag = multiplyImag(a[aOffset], a[aOffset + 1], b[bOffset], b[bOffset + 1]);
+        result[resultOffset] = clamp ? testResultForFloatErrorBuildup(real) : real;
+        result[resultOffset + 1] = clamp ? testResultForFloatErrorBuildup(imag) : imag;
+    }
+
+    /**
+     * Adds the product of two interleaved complex numbers to an accumulator in place, acc += a * b.
+     *
+     * @param a         the array holding a
+     * @param aOffset   the index of the real part of a
+     * @param b         the array holding b
+     * @param bOffset   the index of the real part of b
+     * @param acc       the array holding the accumulator, not a or b at the same offset
+     * @param accOffset the index of the real part of the accumulator
+     * @param clamp     true to round the product and the sum with {@link #testResultForFloatErrorBuildup(double)}
+     */
+    public static void multiplyAccumulate(double[] a, int aOffset, double[] b, int bOffset, double[] acc,
+                                          int accOffset, boolean clamp) {
+        double aReal = a[aOffset];
+        double aImag = a[aOffset + 1];
+        double bReal = b[bOffset];
+        double bImag = b[bOffset + 1];
+        acc[accOffset] = accumulate(acc[accOffset], multiplyReal(aReal, aImag, bReal, bImag), clamp);
+        acc[accOffset + 1] = accumulate(acc[accOffset + 1], multiplyImag(aReal, aImag, bReal, bImag), clamp);
+    }
+
+    /**
+     * Adds an interleaved complex number to an accumulator in place, acc += b.
+     *
+     * @param acc       the array holding the accumulator
+     * @param accOffset the index of the real part of the accumulator
+     * @param b         the array holding b
+     * @param bOffset   the index of the real part of b
+     * @param clamp     true to round both sums with {@link #testResultForFloatErrorBuildup(double)}
+     */
+    public static void addInPlace(double[] acc, int accOffset, double[] b, int bOffset, boolean clamp) {
+        double real = acc[accOffset] + b[bOffset];
+        double imag = acc[accOffset + 1] + b[bOffset + 1];
+        acc[accOffset] = clamp ? testResultForFloatErrorBuildup(real) : real;
+        acc[accOffset + 1] = clamp ? testResultForFloatErrorBuildup(imag) : imag;
+    }
+
+    /**
+     * Flattens a matrix into interleaved real and imaginary parts in row major order, e.g. a 2x2 becomes
+     * {m00 real, m00 imag, m01 real, m01 imag, m10 real, m10 imag, m11 real, m11 imag}, entry (row, col) starting at
+     * index 2 * (row * width + col).
+     *
+     * @param matrix the matrix
+     * @return the matrix as 2 * height * width doubles
+     */
+    public static double[] toInterleaved(ComplexMatrix matrix) {
+        int width = matrix.getWidth();
+        double[] result = new double[2 * matrix.getHeight() * width];
+        for (int row = 0; row < matrix.getHeight(); row++) {
+            for (int col = 0; col < width; col++) {
+                result[2 * (row * width + col)] = matrix.getReal(row, col);
+                result[2 * (row * width + col) + 1] = matrix.getImag(row, col);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a matrix from interleaved real and imaginary parts in row major order, see
+     * {@link #toInterleaved(ComplexMatrix)}.
+     *
+     * @param values the 2 * rows * cols doubles
+     * @param rows   the number of rows
+     * @param cols   the number of columns
+     * @return the matrix
+     */
+    public static ComplexMatrix fromInterleaved(double[] values, int rows, int cols) {
+        ComplexNumber[][] result = new ComplexNumber[rows][cols];
+        for (int row = 0; row < rows; row++) {
+            for (int col = 0; col < cols; col++) {
+                int entry = 2 * (row * cols + col);
+                result[row][col] = new ComplexNumber(values[entry], values[entry + 1]);
+            }
+        }
         return new ComplexMatrix(result);
     }
 
@@ -113,7 +275,13 @@ public final class ComplexMath {
         return new ComplexNumber(real, imag);
     }
 
-    private static double testResultForFloatErrorBuildup(double number){
+    /**
+     * Snaps values within 1e-7 of 1.0 or -1.0 to exactly 1.0 or -1.0 to stop float error building up over many gates.
+     *
+     * @param number the value to test
+     * @return 1.0 or -1.0 when the value is just inside either, otherwise the value unchanged
+     */
+    public static double testResultForFloatErrorBuildup(double number){
         if(number > 0.9999999 && number < 1.0){
             return 1.0;
         } else if (number < -0.9999999 && number > -1.0){
@@ -216,6 +384,18 @@ public final class ComplexMath {
      * @return A string of the dirac notation representation
      */
     public static String complexMatrixToDiracNotation(ComplexMatrix stateVector) {
+        return complexMatrixToDiracNotation(stateVector, 0.0);
+    }
+
+    /**
+     * Interprets the system state vector into a Dirac notation representation for printing to console, printing
+     * amplitude components smaller than the tolerance as 0 so the rounding noise of a single precision state does not
+     * show up as a phase.
+     * @param stateVector the current system state vector
+     * @param tolerance the largest component treated as 0, 0.0 prints every component as computed
+     * @return A string of the dirac notation representation
+     */
+    public static String complexMatrixToDiracNotation(ComplexMatrix stateVector, double tolerance) {
         if (stateVector.getWidth() != 1) {
             throw new IllegalArgumentException("State vector must be a column vector");
         }
@@ -225,30 +405,66 @@ public final class ComplexMath {
         boolean firstTerm = true;
 
         for (int i = 0; i < stateVector.getHeight(); i++) {
-            ComplexNumber amplitude = stateVector.get(i, 0);
-            if (amplitude.magnitudeSquared() > 1e-10) {  // Threshold for considering non-zero amplitudes
-                if(firstTerm){
-                    result.append("|").append(PSI.lower()).append("⟩ = \n");
-                    result.append("{phase} " + "amplitude" + " |basis⟩ \n-------------------------\n");
-
-                }else {
-                    result.append("\n");
-                }
+            firstTerm = appendDiracTerm(result, snapToZero(stateVector.get(i, 0), tolerance), i, numQubits, firstTerm);
+        }
+        return result.toString();
+    }
 
-                double phase = getPhase(amplitude);
-                result.append("{").append(String.format("%.3f°" + "} ",phase));
+    /**
+     * Interprets the stored amplitudes of a sparse state vector into a Dirac notation representation for printing to
+     * console, in the same format as {@link #complexMatrixToDiracNotation(ComplexMatrix, double)} without building a
+     * 2^n column vector.
+     * @param basisStates the basis states with a stored amplitude, in ascending order
+     * @param real the real part of the amplitude of each basis state
+     * @param imag the imaginary part of the amplitude of each basis state
+     * @param numQubits the number of qubits in the system
+     * @param tolerance the largest component treated as 0, 0.0 prints every component as computed
+     * @return A string of the dirac notation representation
+     */
+    public static String sparseToDiracNotation(long[] basisStates, double[] real, double[] imag, int numQubits,
+                                               double tolerance) {
+        StringBuilder result = new StringBuilder();
+        boolean firstTerm = true;
+        for (int i = 0; i < basisStates.length; i++) {
+            ComplexNumber amplitude = snapToZero(new ComplexNumber(real[i], imag[i]), tolerance);
+            firstTerm = appendDiracTerm(result, amplitude, basisStates[i], numQubits, firstTerm);
+        }
+        return result.toString();
+    }
 
-                String coeffString = complexToString(amplitude);
-                if (!coeffString.equals("1") && !coeffString.equals("-1")) {
-                    result.append(coeffString);
-                } else if (coeffString.equals("-1") && firstTerm) {
-                    result.append("-");
-                }
-                result.append(" |").append(String.format("%" + numQubits + "s", Integer.toBinaryString(i)).replace(' ', '0')).append("⟩");
-                firstTerm = false;
+    /**
+     * Appends one term of the Dirac notation if the amplitude is not 0.
+     * @param result the Dirac notation so far
+     * @param amplitude the amplitude of the basis state
+     * @param basisState the basis state
+     * @param numQubits the number of qubits in the system
+     * @param firstTerm true if no term has been appended yet
+     * @return true if still no term has been appended
+     */
+    private static boolean appendDiracTerm(StringBuilder result, ComplexNumber amplitude, long basisState,
+                                           int numQubits, boolean firstTerm) {
+        if (amplitude.magnitudeSquared() > 1e-10) {  // Threshold for considering non-zero amplitudes
+            if(firstTerm){
+                result.append("|").append(PSI.lower()).append("⟩ = \n");
+                result.append("{phase} " + "amplitude" + " |basis⟩ \n-------------------------\n");
+
+            }else {
+                result.append("\n");
             }
+
+            double phase = getPhase(amplitude);
+            result.append("{").append(String.format("%.3f°" + "} ",phase));
+
+            String coeffString = complexToString(amplitude);
+            if (!coeffString.equals("1") && !coeffString.equals("-1")) {
+                result.append(coeffString);
+            } else if (coeffString.equals("-1") && firstTerm) {
+                result.append("-");
+            }
+            result.append(" |").append(String.format("%" + numQubits + "s", Long.toBinaryString(basisState)).replace(' ', '0')).append("⟩");
+            return false;
         }
-        return result.toString();
+        return firstTerm;
     }
 
     /**
@@ -257,6 +473,17 @@ public final class ComplexMath {
      * @return A string of the dirac notation representation
      */
     public static String complexMatrixToBasisStates(ComplexMatrix stateVector) {
+        return complexMatrixToBasisStates(stateVector, 0.0);
+    }
+
+    /**
+     * Interprets the system state vector into the basis states, printing amplitude components smaller than the
+     * tolerance as 0.
+     * @param stateVector the current system state vector
+     * @param tolerance the largest component treated as 0, 0.0 prints every component as computed
+     * @return A string of the basis states separated by $
+     */
+    public static String complexMatrixToBasisStates(ComplexMatrix stateVector, double tolerance) {
         if (stateVector.getWidth() != 1) {
             throw new IllegalArgumentException("State vector must be a column vector");
         }
@@ -265,18 +492,64 @@ public final class ComplexMath {
         StringBuilder result = new StringBuilder();
 
         for (int i = 0; i < stateVector.getHeight(); i++) {
-            ComplexNumber amplitude = stateVector.get(i, 0);
-            String phaseString = complexPhaseToString(amplitude);
-            if (amplitude.magnitudeSquared() > 1e-10) {  // Threshold for considering non-zero amplitudes
-                result.append("|").append(PSI.lower()).append("⟩ = ");
-                result.append(phaseString);
-                result.append("|").append(String.format("%" + numQubits + "s", Integer.toBinaryString(i)).replace(' ', '0')).append("⟩").append('$');
-            }
+            appendBasisState(result, snapToZero(stateVector.get(i, 0), tolerance), i, numQubits);
         }
 
         return result.toString();
     }
 
+    /**
+     * Interprets the stored amplitudes of a sparse state vector into the basis states, in the same format as
+     * {@link #complexMatrixToBasisStates(ComplexMatrix, double)} without building a 2^n column vector.
+     * @param basisStates the basis states with a stored amplitude, in ascending order
+     * @param real the real part of the amplitude of each basis state
+     * @param imag the imaginary part of the amplitude of each basis state
+     * @param numQubits the number of qubits in the system
+     * @param tolerance the largest component treated as 0, 0.0 prints every component as computed
+     * @return A string of the basis states separated by $
+     */
+    public static String sparseToBasisStates(long[] basisStates, double[] real, double[] imag, int numQubits,
+                                             double tolerance) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < basisStates.length; i++) {
+            ComplexNumber amplitude = snapToZero(new ComplexNumber(real[i], imag[i]), tolerance);
+            appendBasisState(result, amplitude, basisStates[i], numQubits);
+        }
+        return result.toString();
+    }
+
+    /**
+     * Appends one basis state followed by a $ if the amplitude is not 0.
+     * @param result the basis states so far
+     * @param amplitude the amplitude of the basis state
+     * @param basisState the basis state
+     * @param numQubits the number of qubits in the system
+     */
+    private static void appendBasisState(StringBuilder result, ComplexNumber amplitude, long basisState,
+                                         int numQubits) {
+        String phaseString = complexPhaseToString(amplitude);
+        if (amplitude.magnitudeSquared() > 1e-10) {  // Threshold for considering non-zero amplitudes
+            result.append("|").append(PSI.lower()).append("⟩ = ");
+            result.append(phaseString);
+            result.append("|").append(String.format("%" + numQubits + "s", Long.toBinaryString(basisState)).replace(' ', '0')).append("⟩").append('$');
+        }
+    }
+
+    /**
+     * Returns the amplitude with each component smaller than the tolerance replaced by 0.
+     * @param amplitude the amplitude to round
+     * @param tolerance the largest component treated as 0
+     * @return the amplitude itself when nothing is rounded, otherwise a new ComplexNumber
+     */
+    private static ComplexNumber snapToZero(ComplexNumber amplitude, double tolerance) {
+        boolean realIsNoise = Math.abs(amplitude.getReal()) < tolerance;
+        boolean imagIsNoise = Math.abs(amplitude.getImag()) < tolerance;
+        if (!realIsNoise && !imagIsNoise) {
+            return amplitude;
+        }
+        return new ComplexNumber(realIsNoise ? 0.0 : amplitude.getReal(), imagIsNoise ? 0.0 : amplitude.getImag());
+    }
+
     /**
      * Converts the complex number to a string in a particular format for use elsewhere
      * @param compNum the ComplexNumber to convert
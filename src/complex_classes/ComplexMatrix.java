@@ -15,6 +15,13 @@ import java.util.Arrays;
  * This class assumes matrices are rectangular (all rows have the same number of columns).
  * </p>
  *
+ * <p>
+ * A matrix made by {@link #immutableCopy(ComplexMatrix)} is backed by interleaved real and imaginary doubles instead
+ * of {@link ComplexNumber} objects. It can be shared freely, e.g. the gate constants of {@link ComplexGateEnums}: its
+ * setters throw and its getters return copies, while {@link #getReal(int, int)} and {@link #getImag(int, int)} read the
+ * doubles without allocating.
+ * </p>
+ *
  * @author Robert Smith
  * @version 0.1
  * @since 25 June 2024
@@ -23,6 +30,7 @@ public final class ComplexMatrix {
     private int rows;
     private int cols;
     private ComplexNumber[][] data;
+    private final double[] values;
 
     /**
      * Constructs an empty matrix of given dimensions filled with zero complex numbers.
@@ -39,6 +47,7 @@ public final class ComplexMatrix {
                 data[i][j] = new ComplexNumber();
             }
         }
+        this.values = null;
     }
 
     /**
@@ -54,6 +63,49 @@ public final class ComplexMatrix {
         this.rows = data.length;
         this.cols = data[0].length;
         this.data = data;
+        this.values = null;
+    }
+
+    /**
+     * Constructs an immutable matrix backed by interleaved real and imaginary doubles in row major order.
+     *
+     * @param values the 2 * rows * cols doubles, not copied
+     * @param rows   The number of rows in the matrix.
+     * @param cols   The number of columns in the matrix.
+     */
+    private ComplexMatrix(double[] values, int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.values = values;
+    }
+
+    /**
+     * Returns an immutable matrix with the same entries, the matrix itself if it is already immutable.
+     *
+     * @param matrix the matrix to copy
+     * @return the immutable matrix
+     */
+    public static ComplexMatrix immutableCopy(ComplexMatrix matrix) {
+        if (matrix.isImmutable()) {
+            return matrix;
+        }
+        double[] values = new double[2 * matrix.rows * matrix.cols];
+        for (int row = 0; row < matrix.rows; row++) {
+            for (int col = 0; col < matrix.cols; col++) {
+                values[2 * (row * matrix.cols + col)] = matrix.getReal(row, col);
+                values[2 * (row * matrix.cols + col) + 1] = matrix.getImag(row, col);
+            }
+        }
+        return new ComplexMatrix(values, matrix.rows, matrix.cols);
+    }
+
+    /**
+     * Returns true if the matrix cannot be changed, see {@link #immutableCopy(ComplexMatrix)}.
+     *
+     * @return true for an immutable matrix
+     */
+    public boolean isImmutable() {
+        return values != null;
     }
 
     /**
@@ -82,9 +134,34 @@ public final class ComplexMatrix {
      * @return The complex number at the specified position.
      */
     public ComplexNumber get(int row, int col) {
+        if (values != null) {
+            return new ComplexNumber(getReal(row, col), getImag(row, col));
+        }
         return data[row][col];
     }
 
+    /**
+     * Returns the real part of the element at the specified row and column, without allocating.
+     *
+     * @param row The row index of the element (0-based).
+     * @param col The column index of the element (0-based).
+     * @return The real part of the element.
+     */
+    public double getReal(int row, int col) {
+        return values != null ? values[2 * (row * cols + col)] : data[row][col].getReal();
+    }
+
+    /**
+     * Returns the imaginary part of the element at the specified row and column, without allocating.
+     *
+     * @param row The row index of the element (0-based).
+     * @param col The column index of the element (0-based).
+     * @return The imaginary part of the element.
+     */
+    public double getImag(int row, int col) {
+        return values != null ? values[2 * (row * cols + col) + 1] : data[row][col].getImag();
+    }
+
     /**
      * Sets the value of the matrix element at the specified row and column.
      *
@@ -93,15 +170,25 @@ public final class ComplexMatrix {
      * @param value The complex number to set at the specified position.
      */
     public void set(int row, int col, ComplexNumber value) {
+        requireMutable();
         data[row][col] = value;
     }
 
     /**
-     * Retrieves the underlying two-dimensional array representation of the matrix.
+     * Retrieves the underlying two-dimensional array representation of the matrix, a copy for an immutable matrix.
      *
      * @return The two-dimensional array of complex numbers representing the matrix.
      */
     public ComplexNumber[][] getData() {
+        if (values != null) {
+            ComplexNumber[][] copy = new ComplexNumber[rows][cols];
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    copy[row][col] = get(row, col);
+                }
+            }
+            return copy;
+        }
         return data;
     }
 
@@ -110,9 +197,16 @@ public final class ComplexMatrix {
      * @param data the data of this class
      */
     public void setData(ComplexNumber[][] data) {
+        requireMutable();
         this.data = data;
     }
 
+    private void requireMutable() {
+        if (values != null) {
+            throw new UnsupportedOperationException("The matrix is immutable.");
+        }
+    }
+
     /**
      * Returns a string representation of the matrix.
      *
@@ -121,7 +215,7 @@ public final class ComplexMatrix {
     @Override
     public String toString() {
         StringBuilder sBuild = new StringBuilder();
-        for (ComplexNumber[] row : data) {
+        for (ComplexNumber[] row : getData()) {
             sBuild.append(Arrays.deepToString(row)).append("\n");
         }
         return sBuild.toString();
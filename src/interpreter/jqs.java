@@ -1,11 +1,13 @@
 package interpreter;
 
-import complex_classes.ComplexMath;
 import complex_classes.ComplexMatrix;
 import complex_classes.ComplexNumber;
 import measurement.Backend;
 import measurement.GateDirector;
 import measurement.QFTBuilder;
+import state.GateOpcode;
+import state.Precision;
+import state.StateOptions;
 import state.StateTracker;
 import state.WorkItem;
 import state.WorkQueue;
@@ -29,13 +31,17 @@ import java.util.*;
  * <br>This class instantiates a StateTracker which tracks the system vector as the system state as a column vector
  * of the qubit amplitudes. It also instantiates the WorkQueue which processes the gates applied to each qubit as the
  * user defines.
+ * <br>The state vector is stored as described by the {@link StateOptions} passed to the constructor, on the Java heap
+ * by default. A jqs object should be closed, or reset, when it is no longer needed so off heap state vector memory is
+ * freed right away.
  *
  * @author Robert Smith
  * @version 0.1
  * @since 7 July 2024
  */
-public class jqs {
+public class jqs implements AutoCloseable {
     private int shots = 1000;
+    private StateOptions options = new StateOptions();
     private String label;
     private int numQubits;
     private WorkQueue workQueue;
@@ -106,6 +112,34 @@ public class jqs {
         device(numQubits);
     }
 
+    /**
+     * Constructor for the jqs class that takes and prepares a system using the provided number of qubits, with the
+     * state vector stored as described by the options, e.g. off heap for more than 29 qubits.
+     *
+     * @param numQubits the number of qubits you want to initialize to 0.0 real and 0.0 imaginary
+     * @param options how the state vector is stored
+     */
+    public jqs(int numQubits, StateOptions options) {
+        this.label = "Default";
+        this.options = options;
+        device(numQubits);
+    }
+
+    /**
+     * Constructor for the jqs class that takes and prepares a system using the provided number of qubits, with the
+     * state vector held on the heap in the precision provided. {@link Precision#SINGLE} halves the memory of the state
+     * vector, fitting one more qubit in the same memory.
+     *
+     * @param numQubits the number of qubits you want to initialize to 0.0 real and 0.0 imaginary
+     * @param precision the precision of the amplitudes
+     */
+    public jqs(int numQubits, Precision precision) {
+        this.label = "Default";
+        this.options = new StateOptions();
+        this.options.setPrecision(precision);
+        device(numQubits);
+    }
+
     /**
      * Overriden toString() to print the Dirac notation of the current state vector.
      *
@@ -113,25 +147,28 @@ public class jqs {
      */
     @Override
     public String toString() {
-        return ComplexMath.complexMatrixToDiracNotation(this.getStateVec());
+        return tracker.toDiracNotation();
     }
 
     /**
      * Reset the system state to zeroed out column vector of the same size as initially declared, replace gate builder
-     * with new empty gate builder, and reset the workQueue to a new empty work queue.
+     * with new empty gate builder, and reset the workQueue to a new empty work queue. The previous state vector is
+     * freed.
      */
     public void reset(int numQubits) {
         device(numQubits);
     }
 
     /**
-     * Initializes the jqs device with the specified number of qubits and default number of shots.
+     * Initializes the jqs device with the specified number of qubits and default number of shots. Any previous state
+     * vector is freed.
      *
      * @param numQubits The number of qubits for the device.
      */
     public void device(int numQubits) {
+        close();
         this.numQubits = numQubits;
-        this.tracker = new StateTracker(numQubits);
+        this.tracker = new StateTracker(numQubits, options);
         this.gd = new GateDirector(tracker);
         this.workQueue = new WorkQueue();
         this.backend = new Backend(gd, tracker, workQueue, shots);
@@ -145,9 +182,30 @@ public class jqs {
      */
     public void device(int numberOfQubits, int numShots) {
         this.shots = numShots;
-        this.workQueue = new WorkQueue();
-        this.tracker = new StateTracker(numberOfQubits);
-        this.backend = new Backend(gd, tracker, workQueue, shots);
+        device(numberOfQubits);
+    }
+
+    /**
+     * Initializes the jqs device with the specified number of qubits, storing the state vector as described by the
+     * options.
+     *
+     * @param numQubits The number of qubits for the device.
+     * @param options   how the state vector is stored
+     */
+    public void device(int numQubits, StateOptions options) {
+        this.options = options;
+        device(numQubits);
+    }
+
+    /**
+     * Frees the state vector of this jqs object. Off heap memory is released immediately, the object must be reset
+     * before it is used again.
+     */
+    @Override
+    public void close() {
+        if (tracker != null) {
+            tracker.close();
+        }
     }
 
     /**
@@ -438,7 +496,7 @@ public class jqs {
      * @param target  The target qubit.
      */
     public void CGate(String gate, int control, int target) {
-        workQueue.addGate(new WorkItem("C"+gate, control, target));
+        workQueue.addGate(new WorkItem(GateOpcode.controlledSymbol(gate), control, target));
     }
 
     ///////////////////////
@@ -482,12 +540,11 @@ public class jqs {
      * @param theta the rotation to apply as a double.
      */
     public void CGate(String gate, int control, int target, double theta) {
-        workQueue.addGate(new WorkItem("C"+gate, control, target, theta));
+        workQueue.addGate(new WorkItem(GateOpcode.controlledSymbol(gate), control, target, theta));
     }
 
     /**
      * Applies a controlled gate with the specified gate name, control qubits, and target qubits.
-     * TODO: Implement this in the gatebuilder
      * Multi control and multi target, can be a single control or many, and a single target or many.
      * Accepts any single qubit gate as the type to apply as controlled gate, e.g. cS, cT etc.
      *
@@ -509,7 +566,6 @@ public class jqs {
 
     /**
      * Applies a controlled-controlled gate with the specified gate name, control qubits, and target qubit.
-     * TODO: Implement this in the gatebuilder
      * Dual control single target gate.
      * Accepts any single qubit gate as the type to apply as controlled gate, e.g. cS, cT etc.
      *
@@ -526,7 +582,6 @@ public class jqs {
 
     /**
      * Applies a controlled-controlled gate with the specified gate name, control qubits, and target qubits.
-     * TODO: Implement this in the gatebuilder
      * Multi control Multi target gate.
      * Accepts any single qubit gate as the type to apply as controlled gate, e.g. cS, cT etc.
      *
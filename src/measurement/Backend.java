@@ -1,8 +1,7 @@
 package measurement;
 
-import complex_classes.ComplexMath;
-import complex_classes.ComplexMatrix;
-import complex_classes.ComplexNumber;
+import state.Precision;
+import state.SparseStateVector;
 import state.StateTracker;
 import state.WorkItem;
 import state.WorkQueue;
@@ -45,13 +44,7 @@ public class Backend {
      * Calculates the computational basis states of the quantum system, mutates the StateTracker state vector directly.
      */
     public void getComputationalState() {
-        while (workQueue.hasWork()) {
-            WorkItem nextItem = workQueue.peek();
-            ComplexMatrix matrix = gateD.getGate(workQueue.getNextGate());
-            if (nextItem.isSingleTarget()) { // TODO: temporary, adjust this for non Control multi-qubit gates
-                tracker.setStateVec(ComplexMath.multiplyMatrix(matrix, tracker.getStateVec()));
-            }
-        }
+        gateD.applyGates(workQueue);
     }
 
     /**
@@ -66,14 +59,26 @@ public class Backend {
             throw new IllegalArgumentException("Invalid qubit index");
         }
 
-        int stateSize = tracker.getStateVecSize();
+        // Measured by basis state index, so the qubits must be in logical order
+        tracker.restoreQubitOrder();
+        // A sparse state is measured from its stored basis states, every other basis state has a 0 amplitude.
+        long[] stored = tracker.getState() instanceof SparseStateVector sparse ? sparse.storedIndices() : null;
+        long basisStateCount = stored == null ? tracker.getStateLength() : stored.length;
         double probability0 = 0;
-
-        // Calculate probability of measuring |0>
-        for (int i = 0; i < stateSize; i++) {
-            if ((i & (1 << target)) == 0) {
-                probability0 += tracker.get(i, 0).magnitudeSquared();
+        double totalProbability = 0;
+
+        // Calculate probability of measuring |0>, the sums are kept in double for single precision states too
+        for (long n = 0; n < basisStateCount; n++) {
+            long i = basisState(stored, n);
+            double probability = magnitudeSquared(i);
+            if ((i & (1L << target)) == 0) {
+                probability0 += probability;
             }
+            totalProbability += probability;
+        }
+        // A single precision state drifts from a norm of 1, measure against the norm it actually has
+        if (tracker.getPrecision() == Precision.SINGLE) {
+            probability0 /= totalProbability;
         }
 
         // Perform measurement
@@ -81,31 +86,44 @@ public class Backend {
 
         // Update state vector based on measurement result
         double normalizationFactor = 0;
-        for (int i = 0; i < stateSize; i++) {
-            boolean keepState = (result == 0 && (i & (1 << target)) == 0) ||
-                    (result == 1 && (i & (1 << target)) != 0);
+        for (long n = 0; n < basisStateCount; n++) {
+            long i = basisState(stored, n);
+            boolean keepState = (result == 0 && (i & (1L << target)) == 0) ||
+                    (result == 1 && (i & (1L << target)) != 0);
             if (keepState) {
-                normalizationFactor += tracker.get(i, 0).magnitudeSquared();
+                normalizationFactor += magnitudeSquared(i);
             } else {
-                tracker.getStateVec().set(i, 0, new ComplexNumber());
+                tracker.setAmplitude(i, 0.0, 0.0);
             }
         }
 
         // Normalize the remaining states
         normalizationFactor = Math.sqrt(normalizationFactor);
-        for (int i = 0; i < stateSize; i++) {
-            if (tracker.get(i, 0).getReal() != 0.0 || tracker.get(i, 0).getImag() != 0.0) {
+        for (long n = 0; n < basisStateCount; n++) {
+            long i = basisState(stored, n);
+            if (tracker.getReal(i) != 0.0 || tracker.getImag(i) != 0.0) {
                 double denominator = normalizationFactor * normalizationFactor;
-                double newReal = (tracker.get(i, 0).getReal() * normalizationFactor) / denominator;
-                double newImag = (tracker.get(i, 0).getImag() * normalizationFactor) / denominator;
-                tracker.getStateVec().set(i, 0, new ComplexNumber(newReal, newImag));
+                double newReal = (tracker.getReal(i) * normalizationFactor) / denominator;
+                double newImag = (tracker.getImag(i) * normalizationFactor) / denominator;
+                tracker.setAmplitude(i, newReal, newImag);
             }
         }
+        tracker.adaptRepresentation();
         return result;
     }
 
+    private static long basisState(long[] stored, long n) {
+        return stored == null ? n : stored[(int) n];
+    }
+
+    private double magnitudeSquared(long index) {
+        double real = tracker.getReal(index);
+        double imag = tracker.getImag(index);
+        return real * real + imag * imag;
+    }
+
     private String[] getViableStates() {
-        String states = ComplexMath.complexMatrixToBasisStates(this.tracker.getStateVec());
+        String states = this.tracker.toBasisStates();
         return states.split("\\$");
     }
 
@@ -116,14 +134,7 @@ public class Backend {
 
 
         for (int i = 0; i < shots; i++) {
-            while (workQueue.hasWork()) {
-                GateDirector gdd = new GateDirector(this.tracker);
-                WorkItem nextItem = workQueue.peek();
-                ComplexMatrix matrix = gdd.getGate(workQueue.getNextGate());
-                if (nextItem.isSingleTarget()) {
-                    tracker.setStateVec(ComplexMath.multiplyMatrix(matrix, tracker.getStateVec()));
-                }
-            }
+            new GateDirector(this.tracker).applyGates(workQueue);
             // Need to insert the determined state resulting from the collapse into the resultsMap not the long form dirac or
             // short form dirac possible results, but a concrete result.
             for (int j = 0; j < numQubits; j++) {
@@ -134,15 +145,16 @@ public class Backend {
                 resultsMap.put(state, resultsMap.getOrDefault(state, 0.0) + 1.0);
             }
             workQueue = workCopy.makeClone();
-            tracker.setStateVec(stateClone.getStateVec());
+            tracker.copyFrom(stateClone);
         }
+        stateClone.close();
         aggregateResults(resultsMap);
     }
 
     //enabled commented out code to check the sum values of all probabilities while the method runs and display in console.
     //used for verifying the sum of all probabilities is ~1.0
     private void aggregateResults(Map<String, Double> resultsMap) {
-        String[] probabilitiesArray = new String[tracker.getStateVecSize() + 2];  //sized for all possibilities + the 2 comments
+        String[] probabilitiesArray = new String[resultsMap.size() + 2];  //sized for all observed results + the 2 comments
         int probArrayIdx = 1;                                                   //tracker position in for each loop
         probabilitiesArray[0] = "Probabilities over " + shots + " shots:";
         double perIncident = 1.0 / shots;                                       //weighted value per occurrence of a result
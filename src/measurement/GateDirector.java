@@ -1,24 +1,47 @@
 package measurement;
 
-import complex_classes.ComplexMath;
 import complex_classes.ComplexMatrix;
 import complex_classes.ComplexNumber;
+import state.GateOpcode;
+import state.MappedStateVector;
+import state.SparseStateVector;
+import state.StateOptions;
 import state.StateTracker;
+import state.StateVector;
 import state.WorkItem;
+import state.WorkQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 import static complex_classes.ComplexGateEnums.*;
 
 /**
- * The GateDirector class does the decoding and direction of applying gates to the correct classes that build the operator matrix
- * to return and multiply against the current state vector for calculating gates.
+ * The GateDirector class does the decoding and direction of applying gates to the correct classes that apply the gate
+ * operator to the current state vector in place.
  *
  * @author Robert Smith
  * @version 0.1
  * @since 16 July 2024
  */
 public class GateDirector {
-    ComplexMatrix finalGate;
+    /**
+     * The fewest gates in a run on high qubits for which moving the qubits low, and back later, costs less than
+     * applying each gate across the whole state vector.
+     */
+    static final int MIN_RELABELED_RUN = 4;
     StateTracker tracker;
+    private List<RecordedKernel> recording;
+
+    /**
+     * A dense gate kernel recorded for a cache blocked sweep.
+     *
+     * @param groups the number of groups of the kernel
+     * @param block  the kernel
+     */
+    private record RecordedKernel(long groups, KernelScheduler.Block block) {
+    }
 
     /**
      * Constructor for the GateDirector, takes in the StateTracker tracker from jqs to keep the tracker state
@@ -28,50 +51,132 @@ public class GateDirector {
      */
     public GateDirector(StateTracker tracker) {
         this.tracker = tracker;
-        finalGate = new ComplexMatrix(tracker.getStateVec().getHeight(),
-                tracker.getStateVec().getHeight());
     }
 
     /**
-     * Returns the final gate matrix.
+     * Applies the gate described by the WorkItem directly to the tracker state vector.
+     * <p>
+     * Single-qubit gates are applied in place by the {@link SingleQubitGateBuilder} kernel and never build the full
+     * 2^n x 2^n operator, diagonal gates only scale each amplitude by a phase and X only swaps amplitudes. Dual and
+     * multi-qubit gates mutate the tracker state through the {@link MultiQubitGateBuilder}.
+     * After each gate an adaptive tracker may switch between sparse and dense storage.
+     * </p>
+     * <p>
+     * A SWAP moves no amplitudes, it only relabels its two qubits, see {@link QubitLayout#exchange(int, int)}. The
+     * qubits of every gate are mapped through the current relabeling before the gate is applied.
+     * </p>
      *
      * @param thisGate is a WorkItem from the WorkQueue
-     * @return The ComplexMatrix representing the final gate.
      */
-    public ComplexMatrix getGate(WorkItem thisGate) {
-        calculateGate(thisGate);
-        return finalGate;
+    public void applyGate(WorkItem thisGate) {
+        QubitLayout layout = QubitLayout.of(tracker);
+        if (isRelabeledSwap(thisGate)) {
+            layout.exchange(thisGate.getControl(), thisGate.getTarget());
+        } else {
+            applyPhysical(layout.toPhysical(thisGate));
+        }
+    }
+
+    /**
+     * Applies a gate whose qubits are physical bits of the state vector.
+     *
+     * @param thisGate the gate on physical bits
+     */
+    private void applyPhysical(WorkItem thisGate) {
+        applyKernels(thisGate);
+        tracker.adaptRepresentation();
     }
 
     /**
-     * Executes the sequence of operators to build the final gate matrix.
+     * Applies every gate in the queue, in order, emptying it.
+     * <p>
+     * The queue is split into runs of consecutive gates that together act on at most
+     * {@link StateTracker#getCacheBlockQubits()} qubits. A run of two or more gates on qubits below that is applied as
+     * one sweep: the state vector is split into blocks of 2^cacheBlockQubits consecutive amplitudes and the whole run is
+     * applied to one block before moving to the next. None of the gates in the run pair amplitudes from different
+     * blocks, so each block stays in cache for the whole run and the result is the same as applying the gates one at a
+     * time.
+     * </p>
+     * <p>
+     * A run of at least {@value #MIN_RELABELED_RUN} gates that touches higher qubits first moves those qubits to low
+     * bits of the state vector in one pass, see {@link QubitLayout}, and is then swept on the relabeled state. A SWAP
+     * only relabels its qubits and ends the run. The qubits are left relabeled until the tracker is read, see
+     * {@link StateTracker#restoreQubitOrder()}, so everything that reads the state sees the order of the logical
+     * qubits. Sparse and memory mapped states, and states no wider than one block, apply every gate on its own.
+     * </p>
      *
-     * @param operatorSequence An array of ComplexMatrix operators to be applied.
+     * <p>
+     * Once {@link StateOptions#setGateFusion(boolean)} turned it on, consecutive single qubit gates on the same qubit
+     * are first multiplied into one gate, see {@link GateFusion}. With {@link StateOptions#setFusionQubits(int)} above 1
+     * neighbouring single and two qubit gates are merged into blocks on up to that many qubits instead, except on a
+     * sparse state, where a dense block would fill in amplitudes the separate gates leave zero.
+     * </p>
+     *
+     * @param queue the queue of gates to apply
      */
-    public void executeOperatorSequence(ComplexMatrix[] operatorSequence) {
-        for (int i = operatorSequence.length - 1; i >= 0; i--) {
-            if (i == operatorSequence.length - 1) {
-                this.finalGate = ComplexMath.tensorMultiply(operatorSequence[i], operatorSequence[i - 1]);
-                i--;
+    public void applyGates(WorkQueue queue) {
+        if (tracker.isGateFusion()) {
+            int fusionQubits = Math.min(tracker.getFusionQubits(), UnitaryGateBuilder.MAX_QUBITS);
+            if (fusionQubits > 1 && !(tracker.getState() instanceof SparseStateVector)) {
+                queue = GateFusion.fuseBlocks(queue, fusionQubits, tracker.getQubitCount());
+            } else {
+                queue = GateFusion.fuseSingleQubitGates(queue);
+            }
+        }
+        QubitLayout layout = QubitLayout.of(tracker);
+        WorkItem next = queue.getNextGate();
+        while (next != null) {
+            List<WorkItem> run = new ArrayList<>();
+            long touched = 0;
+            while (next != null && !isRelabeledSwap(next) && isBlockable(next, touched)) {
+                touched |= qubitMask(next);
+                run.add(next);
+                next = queue.getNextGate();
+            }
+            if (!run.isEmpty()) {
+                applyRun(layout, run, touched);
+            } else if (isRelabeledSwap(next)) {
+                layout.exchange(next.getControl(), next.getTarget());
+                next = queue.getNextGate();
             } else {
-                this.finalGate = ComplexMath.tensorMultiply(finalGate, operatorSequence[i]);
+                applyPhysical(layout.toPhysical(next));
+                next = queue.getNextGate();
             }
         }
     }
 
     /**
-     * Calculates and applies the quantum gate based on the next WorkItem in the queue.
+     * Runs the blocks of a dense gate kernel, see {@link KernelScheduler#forEachBlock}, or records the kernel while a
+     * sweep is being built.
      *
-     * @param thisGate The WorkItem containing the gate operation to be applied.
+     * @param groups         the number of groups of the kernel, 2^(n-k) for a kernel on k qubits
+     * @param groupsPerChunk the groups per chunk of the state vector
+     * @param block          the kernel
      */
-    private void calculateGate(WorkItem thisGate) {
-        ComplexMatrix singleOperator = decodeOperator(thisGate);
-        this.finalGate = new ComplexMatrix(tracker.getStateVec().getHeight(),
-                tracker.getStateVec().getHeight());
+    void runKernel(long groups, long groupsPerChunk, KernelScheduler.Block block) {
+        if (recording != null) {
+            recording.add(new RecordedKernel(groups, block));
+        } else {
+            KernelScheduler.forEachBlock(tracker, groups, groupsPerChunk, block);
+        }
+    }
 
+    /**
+     * Sends the gate to the builder that applies it, without checking the storage of an adaptive tracker.
+     *
+     * @param thisGate the gate to apply
+     */
+    private void applyKernels(WorkItem thisGate) {
         if (thisGate.isSingleTarget()) {
             SingleQubitGateBuilder sqgb = new SingleQubitGateBuilder(this);
-            sqgb.buildSingleQubitOperator(thisGate, singleOperator);
+            ComplexMatrix operator = decodeOperator(thisGate);
+            if (isBitFlip(thisGate, operator)) {
+                sqgb.applyBitFlip(thisGate);
+            } else if (isDiagonal(thisGate, operator)) {
+                sqgb.applyDiagonalOperator(thisGate, operator);
+            } else {
+                sqgb.applySingleQubitOperator(thisGate, operator);
+            }
         } else if (thisGate.isDualTarget() || thisGate.isMultiTarget()) {
             MultiQubitGateBuilder mqgb = new MultiQubitGateBuilder(this);
             mqgb.dualAndMultiGateSetup(thisGate);
@@ -79,33 +184,272 @@ public class GateDirector {
     }
 
     /**
-     * Decodes the operator from the WorkItem and returns the corresponding ComplexMatrix.
+     * Returns true if the gate can join a run that is applied one cache block at a time, the state is dense storage
+     * wider than one block, the qubits of the gate are valid and the run still acts on at most one block of qubits.
+     *
+     * @param gate    the gate
+     * @param touched the logical qubits the gates of the run so far act on
+     * @return true if the gate can join the run
+     */
+    private boolean isBlockable(WorkItem gate, long touched) {
+        int blockQubits = tracker.getCacheBlockQubits();
+        StateVector state = tracker.getState();
+        if (blockQubits < 1 || tracker.getQubitCount() <= blockQubits || blockQubits > state.chunkBits()
+                || state instanceof SparseStateVector || state instanceof MappedStateVector) {
+            return false;
+        }
+        long mask = qubitMask(gate);
+        return mask != 0 && Long.bitCount(touched | mask) <= blockQubits;
+    }
+
+    /**
+     * Returns true if the gate is a SWAP of two valid qubits that is applied by relabeling them. Memory mapped states
+     * apply SWAP as a gate, moving the qubits back later would page the whole file in twice.
+     *
+     * @param gate the gate
+     * @return true if the gate only relabels its qubits
+     */
+    private boolean isRelabeledSwap(WorkItem gate) {
+        return gate.isDualTarget() && gate.getOpcode() == GateOpcode.SWAP
+                && Long.bitCount(qubitMask(gate)) == 2 && !(tracker.getState() instanceof MappedStateVector);
+    }
+
+    /**
+     * Returns the logical qubits a gate acts on as a bit set, or 0 if a qubit is out of range or repeated, so the gate
+     * builders report it.
+     *
+     * @param gate the gate
+     * @return the bit set of its control and target qubits, or 0
+     */
+    private long qubitMask(WorkItem gate) {
+        long mask = 0;
+        for (int qubit : qubitsOf(gate)) {
+            if (qubit < 0 || qubit >= tracker.getQubitCount() || (mask & (1L << qubit)) != 0) {
+                return 0;
+            }
+            mask |= 1L << qubit;
+        }
+        return mask;
+    }
+
+    /**
+     * Returns every control and target qubit of a gate.
+     *
+     * @param gate the gate
+     * @return its control qubits followed by its target qubits
+     */
+    static List<Integer> qubitsOf(WorkItem gate) {
+        List<Integer> qubits = new ArrayList<>();
+        if (gate.isSingleTarget()) {
+            qubits.add(gate.getTarget());
+        } else if (gate.isDualTarget()) {
+            qubits.add(gate.getControl());
+            qubits.add(gate.getTarget());
+        } else {
+            qubits.addAll(Arrays.asList(gate.getControls()));
+            qubits.addAll(Arrays.asList(gate.getTargets()));
+        }
+        return qubits;
+    }
+
+    /**
+     * Applies a run of gates that together act on at most one cache block of qubits. A long enough run on high qubits
+     * first moves them low, then every stretch of two or more gates on low physical bits is swept and the other gates
+     * are applied one at a time.
+     *
+     * @param layout  the layout of the state vector
+     * @param run     the gates, each accepted by {@link #isBlockable(WorkItem, long)}
+     * @param touched the logical qubits the run acts on
+     */
+    private void applyRun(QubitLayout layout, List<WorkItem> run, long touched) {
+        int blockQubits = tracker.getCacheBlockQubits();
+        if (run.size() >= MIN_RELABELED_RUN && layout.physicalMask(touched) >>> blockQubits != 0) {
+            layout.moveTo(layout.bringLow(touched, blockQubits));
+        }
+        List<WorkItem> sweep = new ArrayList<>();
+        for (WorkItem gate : run) {
+            WorkItem physicalGate = layout.toPhysical(gate);
+            if (layout.physicalMask(qubitMask(gate)) >>> blockQubits == 0) {
+                sweep.add(physicalGate);
+                continue;
+            }
+            applyStretch(sweep);
+            applyPhysical(physicalGate);
+        }
+        applyStretch(sweep);
+    }
+
+    /**
+     * Applies and empties a stretch of gates on low physical bits, as a sweep if there are two or more.
+     *
+     * @param stretch the gates on physical bits below the cache block
+     */
+    private void applyStretch(List<WorkItem> stretch) {
+        if (stretch.size() == 1) {
+            applyPhysical(stretch.get(0));
+        } else if (stretch.size() > 1) {
+            applySweep(stretch);
+        }
+        stretch.clear();
+    }
+
+    /**
+     * Records the kernels of a run of gates, then applies all of them to one cache block at a time. If a gate of the
+     * run is invalid, the exception is thrown before any gate of the run is applied.
+     *
+     * @param run the gates on physical bits below the cache block
+     */
+    private void applySweep(List<WorkItem> run) {
+        List<RecordedKernel> kernels = new ArrayList<>();
+        recording = kernels;
+        try {
+            for (WorkItem gate : run) {
+                applyKernels(gate);
+            }
+        } finally {
+            recording = null;
+        }
+        int blockQubits = tracker.getCacheBlockQubits();
+        int outside = tracker.getQubitCount() - blockQubits;
+        // A task is given as many blocks as hold MIN_GROUPS_PER_TASK groups, so the sweep splits across the pool on the
+        // same states a single gate would.
+        long leafBlocks = Math.max(1, KernelScheduler.MIN_GROUPS_PER_TASK >> blockQubits);
+        // A kernel on k qubits below the block inserts its bits below the block, so group g of a kernel with G
+        // groups lies in block g / (G >> outside).
+        KernelScheduler.forEachBlock(tracker, 1L << outside, 1, leafBlocks, (first, last) -> {
+            for (long block = first; block < last; block++) {
+                for (RecordedKernel kernel : kernels) {
+                    long groupsPerBlock = kernel.groups() >>> outside;
+                    kernel.block().apply(block * groupsPerBlock, (block + 1) * groupsPerBlock);
+                }
+            }
+        });
+        tracker.adaptRepresentation();
+    }
+
+    /**
+     * Returns true if the single qubit gate of the work item is diagonal, e.g. Z, S, Si, T, Ti, RZ, R1 and R1i and
+     * their controlled forms. A diagonal gate only multiplies each amplitude by a phase, so it is applied without
+     * pairing amplitudes. A named gate is classified by its opcode, see {@link GateOpcode#isDiagonal()}, only the
+     * matrix of a {@link WorkItem#UNITARY} work item is inspected.
+     *
+     * @param work     the work item
+     * @param operator the 2x2 operator decoded from it, may be null
+     * @return true if the gate applied to the targets is diagonal
+     */
+    static boolean isDiagonal(WorkItem work, ComplexMatrix operator) {
+        GateOpcode opcode = work.getOpcode();
+        if (opcode == null || opcode == GateOpcode.UNITARY) {
+            return isDiagonal(operator);
+        }
+        return opcode.getTarget().isDiagonal();
+    }
+
+    /**
+     * Returns true if the single qubit gate of the work item is X, e.g. for X, CX, CXX and TOFFOLI. X only swaps the
+     * two amplitudes of each pair, so it and its controlled forms are applied as a permutation without any arithmetic.
+     * A named gate is classified by its opcode, see {@link GateOpcode#isPermutation()}, only the matrix of a
+     * {@link WorkItem#UNITARY} work item is inspected.
+     *
+     * @param work     the work item
+     * @param operator the 2x2 operator decoded from it, may be null
+     * @return true if the gate applied to the targets is X
+     */
+    static boolean isBitFlip(WorkItem work, ComplexMatrix operator) {
+        GateOpcode opcode = work.getOpcode();
+        if (opcode == null || opcode == GateOpcode.UNITARY) {
+            return isBitFlip(operator);
+        }
+        // ID is the other single qubit permutation, it is diagonal and moves nothing.
+        GateOpcode target = opcode.getTarget();
+        return target.getQubits() == 1 && target.isPermutation() && !target.isDiagonal();
+    }
+
+    /**
+     * Returns true if the operator is a 2x2 diagonal matrix.
+     *
+     * @param operator the decoded operator, may be null
+     * @return true if the operator is 2x2 with both off diagonal entries exactly 0
+     */
+    private static boolean isDiagonal(ComplexMatrix operator) {
+        if (operator == null || operator.getHeight() != 2 || operator.getWidth() != 2) {
+            return false;
+        }
+        return isExactly(operator, 0, 1, 0.0) && isExactly(operator, 1, 0, 0.0);
+    }
+
+    /**
+     * Applies a 2^k x 2^k operator to k qubits of the tracker state vector in place, without building the 2^n x 2^n
+     * operator. The first qubit is the high bit of the row and column index of the operator.
+     *
+     * @param operator the 2^k x 2^k operator, k up to 6
+     * @param qubits   the k distinct qubits the operator acts on
+     * @throws IllegalArgumentException if a qubit is out of range or repeated, or the operator is the wrong size
+     */
+    public void applyOperator(ComplexMatrix operator, int... qubits) {
+        UnitaryGateBuilder.validate(tracker.getQubitCount(), qubits, operator);
+        int[] physical = QubitLayout.of(tracker).toPhysical(qubits);
+        if (tracker.getState() instanceof SparseStateVector sparse) {
+            SparseGateBuilder.applyOperator(sparse, physical, operator);
+        } else {
+            UnitaryGateBuilder.applyOperator(this, physical, operator);
+        }
+        tracker.adaptRepresentation();
+    }
+
+    /**
+     * Returns true if the operator is exactly the Pauli X matrix.
+     *
+     * @param operator the decoded operator, may be null
+     * @return true if the operator is 2x2 with 0 on the diagonal and 1 off the diagonal
+     */
+    private static boolean isBitFlip(ComplexMatrix operator) {
+        if (operator == null || operator.getHeight() != 2 || operator.getWidth() != 2) {
+            return false;
+        }
+        return isExactly(operator, 0, 0, 0.0) && isExactly(operator, 0, 1, 1.0)
+                && isExactly(operator, 1, 0, 1.0) && isExactly(operator, 1, 1, 0.0);
+    }
+
+    private static boolean isExactly(ComplexMatrix operator, int row, int col, double real) {
+        return operator.getReal(row, col) == real && operator.getImag(row, col) == 0.0;
+    }
+
+    /**
+     * Decodes the operator from the WorkItem and returns the corresponding ComplexMatrix, the matrix a
+     * {@link WorkItem#UNITARY} work item carries as it is.
      *
      * @param work The WorkItem containing the operator information.
      * @return The ComplexMatrix representing the operator.
      */
-    private static ComplexMatrix decodeOperator(WorkItem work) {
-        ComplexMatrix singleOperator = null;
-        String worker = work.getOperator();
-        switch (worker) {
-            case ("X"), ("CX"), ("CXX"), ("TOFFOLI") -> singleOperator = PAULI_X.getMatrix();
-            case ("Y"), ("CY") -> singleOperator = PAULI_Y.getMatrix();
-            case ("Z"), ("CZ") -> singleOperator = PAULI_Z.getMatrix();
-            case ("H"), ("CH") -> singleOperator = HADAMARD.getMatrix();
-            case ("S"), ("CS") -> singleOperator = S_GATE.getMatrix();
-            case ("Si"), ("CSi") -> singleOperator = SI_GATE.getMatrix();
-            case ("T"), ("CT") -> singleOperator = T_GATE.getMatrix();
-            case ("Ti"), ("CTi") -> singleOperator = TI_GATE.getMatrix();
-            case ("RX"), ("CRX") -> singleOperator = buildRXGate(work);
-            case ("RY"), ("CRY") -> singleOperator = buildRYGate(work);
-            case ("RZ"), ("CRZ") -> singleOperator = buildRZGate(work);
-            case ("R1"), ("CR1") -> singleOperator = buildR1Gate(work);
-            case ("R1i"), ("CR1i") -> singleOperator = buildR1Gatei(work);
-            case ("SWAP"), ("CSWAP") -> singleOperator = SWAP.getMatrix();
-            case ("ISWAP") -> singleOperator = ISWAP.getMatrix();
-            case ("ID") -> singleOperator = IDENTITY.getMatrix();
-        }
-        return singleOperator;
+    static ComplexMatrix decodeOperator(WorkItem work) {
+        if (work.getMatrix() != null) {
+            return work.getMatrix();
+        }
+        GateOpcode opcode = work.getOpcode();
+        if (opcode == null) {
+            return null;
+        }
+        // A controlled gate decodes to the operator of its target gate.
+        return switch (opcode.getTarget()) {
+            case X -> PAULI_X.getMatrix();
+            case Y -> PAULI_Y.getMatrix();
+            case Z -> PAULI_Z.getMatrix();
+            case H -> HADAMARD.getMatrix();
+            case S -> S_GATE.getMatrix();
+            case SI -> SI_GATE.getMatrix();
+            case T -> T_GATE.getMatrix();
+            case TI -> TI_GATE.getMatrix();
+            case RX -> GateMatrixCache.get(GateOpcode.RX, work, GateDirector::buildRXGate);
+            case RY -> GateMatrixCache.get(GateOpcode.RY, work, GateDirector::buildRYGate);
+            case RZ -> GateMatrixCache.get(GateOpcode.RZ, work, GateDirector::buildRZGate);
+            case R1 -> GateMatrixCache.get(GateOpcode.R1, work, GateDirector::buildR1Gate);
+            case R1I -> GateMatrixCache.get(GateOpcode.R1I, work, GateDirector::buildR1Gatei);
+            case SWAP -> SWAP.getMatrix();
+            case ISWAP -> ISWAP.getMatrix();
+            case ID -> IDENTITY.getMatrix();
+            default -> null;
+        };
     }
 
     /**
@@ -210,13 +554,12 @@ public class GateDirector {
     /**
      * Overridden toString for this class.
      *
-     * @return A string of the final operator calculated and the system state as a column vector in a ComplexMatrix of 2^n x 1 dimensions.
+     * @return A string of the system state as a column vector in a ComplexMatrix of 2^n x 1 dimensions.
      */
     @Override
     public String toString() {
         return "GateDirector{" +
-                "finalGate=" + finalGate +
-                ", tracker=" + tracker +
+                "tracker=" + tracker +
                 '}';
     }
 }
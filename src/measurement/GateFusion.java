@@ -0,0 +1,358 @@
+package measurement;
+
+import complex_classes.ComplexMath;
+import complex_classes.ComplexMatrix;
+import state.GateOpcode;
+import state.WorkItem;
+import state.WorkQueue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The GateFusion stage sits between the {@link WorkQueue} and the gate kernels and multiplies consecutive single qubit
+ * gates on the same qubit into one 2x2 gate, so a run like H, T, H, S, RZ makes one pass over the state vector instead
+ * of five.
+ * <p>
+ * Single qubit gates on different qubits commute, so each qubit collects its gates until a gate on more than one qubit
+ * touches it, and only then is the product of the collected gates emitted ahead of that gate. A qubit with a single
+ * collected gate emits that gate unchanged, so it keeps its permutation or diagonal kernel, and a product that is
+ * exactly the identity, e.g. X then X, is dropped.
+ * </p>
+ * <p>
+ * With {@link #fuseBlocks(WorkQueue, int, int)} neighbouring single and two qubit gates are merged further, into
+ * blocks on up to k qubits. Each qubit belongs to at most one open block. A gate joins the blocks on its qubits, merging
+ * them, while they act on at most k qubits together, otherwise the widest of those blocks are emitted until the rest
+ * fit.
+ * Any other gate, and a SWAP which only relabels qubits, emits the blocks on its qubits and is emitted as it is. A
+ * block is emitted as one 2^k x 2^k {@link WorkItem#UNITARY} gate, so a deep circuit makes one pass over the state
+ * vector per block instead of one per gate.
+ * </p>
+ * <p>
+ * The products are formed without clamping, see {@link ComplexMath#multiplyMatrix(double[], double[], double[], int,
+ * int, int, boolean)}, the kernels round the amplitudes as usual when the fused gate is applied.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class GateFusion {
+
+    private GateFusion() {
+    }
+
+    /**
+     * Drains the queue and returns its gates with consecutive single qubit gates on the same qubit fused.
+     *
+     * @param queue the queue of gates, empty afterward
+     * @return a queue of the fused gates
+     */
+    static WorkQueue fuseSingleQubitGates(WorkQueue queue) {
+        LinkedList<WorkItem> fused = new LinkedList<>();
+        Map<Integer, List<WorkItem>> pending = new TreeMap<>();
+        WorkItem gate;
+        while ((gate = queue.getNextGate()) != null) {
+            if (gate.isSingleTarget() && isFusible(gate)) {
+                pending.computeIfAbsent(gate.getTarget(), qubit -> new ArrayList<>()).add(gate);
+                continue;
+            }
+            for (int qubit : GateDirector.qubitsOf(gate)) {
+                flush(pending.remove(qubit), fused);
+            }
+            fused.add(gate);
+        }
+        for (List<WorkItem> gates : pending.values()) {
+            flush(gates, fused);
+        }
+        return new WorkQueue(fused);
+    }
+
+    /**
+     * Drains the queue and returns its gates with neighbouring single and two qubit gates merged into blocks on at most
+     * maxQubits qubits.
+     *
+     * @param queue      the queue of gates, empty afterward
+     * @param maxQubits  the largest number of qubits of a block, from 2 to {@value UnitaryGateBuilder#MAX_QUBITS}
+     * @param qubitCount the number of qubits of the state, gates on other qubits are left to the gate builders
+     * @return a queue of the fused gates
+     */
+    static WorkQueue fuseBlocks(WorkQueue queue, int maxQubits, int qubitCount) {
+        LinkedList<WorkItem> fused = new LinkedList<>();
+        Map<Integer, Block> open = new HashMap<>();
+        List<Block> blocks = new ArrayList<>();
+        WorkItem gate;
+        while ((gate = queue.getNextGate()) != null) {
+            long mask = blockMask(gate, qubitCount);
+            List<Block> joined = new ArrayList<>();
+            long union = mask;
+            for (int qubit : GateDirector.qubitsOf(gate)) {
+                Block block = open.get(qubit);
+                if (block != null && !joined.contains(block)) {
+                    joined.add(block);
+                    union |= block.qubits;
+                }
+            }
+            if (mask == 0) {
+                for (Block block : joined) {
+                    close(block, open, blocks, fused);
+                }
+                fused.add(gate);
+                continue;
+            }
+            // Emit the widest of the blocks until the rest fit in one block with the gate.
+            joined.sort((a, b) -> Long.bitCount(b.qubits) - Long.bitCount(a.qubits));
+            while (Long.bitCount(union) > maxQubits) {
+                Block widest = joined.remove(0);
+                close(widest, open, blocks, fused);
+                union = mask;
+                for (Block block : joined) {
+                    union |= block.qubits;
+                }
+            }
+            Block merged = new Block();
+            for (Block block : joined) {
+                merged.gates.addAll(block.gates);
+                blocks.remove(block);
+            }
+            merged.qubits = union;
+            merged.gates.add(gate);
+            blocks.add(merged);
+            for (long rest = union; rest != 0; rest &= rest - 1) {
+                open.put(Long.numberOfTrailingZeros(rest), merged);
+            }
+        }
+        for (Block block : blocks) {
+            emit(block, fused);
+        }
+        return new WorkQueue(fused);
+    }
+
+    /**
+     * Emits an open block and removes it from the open blocks.
+     */
+    private static void close(Block block, Map<Integer, Block> open, List<Block> blocks, List<WorkItem> fused) {
+        for (long rest = block.qubits; rest != 0; rest &= rest - 1) {
+            open.remove(Long.numberOfTrailingZeros(rest));
+        }
+        blocks.remove(block);
+        emit(block, fused);
+    }
+
+    /**
+     * Emits the gates of a block, as they are if there is one, otherwise as their product on the qubits of the block,
+     * the highest qubit as the high bit of the operator.
+     *
+     * @param block the block
+     * @param fused the gates to emit into
+     */
+    private static void emit(Block block, List<WorkItem> fused) {
+        if (block.gates.size() == 1) {
+            fused.add(block.gates.get(0));
+            return;
+        }
+        int width = Long.bitCount(block.qubits);
+        int[] local = new int[64];
+        Integer[] targets = new Integer[width];
+        int bit = width;
+        for (long rest = block.qubits; rest != 0; rest &= rest - 1) {
+            int qubit = Long.numberOfTrailingZeros(rest);
+            local[qubit] = width - bit;
+            targets[--bit] = qubit;
+        }
+        int dim = 1 << width;
+        double[] product = new double[2 * dim * dim];
+        for (int i = 0; i < dim; i++) {
+            product[2 * (i * dim + i)] = 1.0;
+        }
+        double[] next = new double[product.length];
+        for (WorkItem gate : block.gates) {
+            // A later gate multiplies from the left.
+            applyToColumns(gate, local, product, next, dim);
+            double[] swap = product;
+            product = next;
+            next = swap;
+        }
+        if (isIdentity(product, dim)) {
+            return;
+        }
+        ComplexMatrix operator = ComplexMath.fromInterleaved(product, dim, dim);
+        fused.add(width == 1 ? new WorkItem(operator, targets[0]) : new WorkItem(operator, targets));
+    }
+
+    /**
+     * Multiplies the product of a block by the operator of one of its gates from the left, treating each column of the
+     * product as a state of the qubits of the block.
+     *
+     * @param gate    the gate, single target or dual target
+     * @param local   maps each qubit of the block to its bit in the block
+     * @param product the product so far, dim x dim interleaved
+     * @param result  receives the new product
+     * @param dim     the dimension of the block
+     */
+    private static void applyToColumns(WorkItem gate, int[] local, double[] product, double[] result, int dim) {
+        double[] operator = blockOperator(gate);
+        List<Integer> qubits = GateDirector.qubitsOf(gate);
+        int size = 1 << qubits.size();
+        long[] bits = new long[qubits.size()];
+        long gateMask = 0;
+        for (int i = 0; i < bits.length; i++) {
+            // The first qubit of the gate is the high bit of its operator.
+            bits[i] = 1L << local[qubits.get(i)];
+            gateMask |= bits[i];
+        }
+        Arrays.fill(result, 0.0);
+        for (int row = 0; row < dim; row++) {
+            int gateRow = gateIndex(row, bits);
+            long base = row & ~gateMask;
+            for (int inner = 0; inner < size; inner++) {
+                int source = (int) (base | spread(inner, bits));
+                int operatorOffset = 2 * (gateRow * size + inner);
+                for (int column = 0; column < dim; column++) {
+                    ComplexMath.multiplyAccumulate(operator, operatorOffset, product, 2 * (source * dim + column),
+                            result, 2 * (row * dim + column), false);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the operator a gate of a block applies to its qubits, a controlled gate as the 4x4 operator with the
+     * control as the high bit.
+     */
+    private static double[] blockOperator(WorkItem gate) {
+        double[] operator = ComplexMath.toInterleaved(GateDirector.decodeOperator(gate));
+        if (!gate.isDualTarget() || operator.length == 32) {
+            return operator;
+        }
+        double[] controlled = new double[32];
+        controlled[0] = 1.0;
+        controlled[10] = 1.0;
+        for (int row = 0; row < 2; row++) {
+            System.arraycopy(operator, 4 * row, controlled, 8 * (2 + row) + 4, 4);
+        }
+        return controlled;
+    }
+
+    private static int gateIndex(int row, long[] bits) {
+        int index = 0;
+        for (long bit : bits) {
+            index = (index << 1) | ((row & bit) != 0 ? 1 : 0);
+        }
+        return index;
+    }
+
+    private static long spread(int index, long[] bits) {
+        long spread = 0;
+        for (int i = 0; i < bits.length; i++) {
+            if ((index & (1 << (bits.length - 1 - i))) != 0) {
+                spread |= bits[i];
+            }
+        }
+        return spread;
+    }
+
+    /**
+     * Returns the qubits of a gate that can join a block as a bit set, or 0 if it cannot: the gate is a single qubit
+     * gate with a 2x2 operator, ISWAP, or a controlled gate with a 2x2 target operator, on distinct valid qubits.
+     *
+     * @param gate       the gate
+     * @param qubitCount the number of qubits of the state
+     * @return the bit set of its qubits, or 0
+     */
+    private static long blockMask(WorkItem gate, int qubitCount) {
+        if (gate.isMultiTarget()) {
+            return 0;
+        }
+        ComplexMatrix operator = GateDirector.decodeOperator(gate);
+        if (operator == null) {
+            return 0;
+        }
+        if (gate.isSingleTarget() ? operator.getHeight() != 2 : !isFusibleDual(gate, operator)) {
+            return 0;
+        }
+        long mask = 0;
+        for (int qubit : GateDirector.qubitsOf(gate)) {
+            if (qubit < 0 || qubit >= qubitCount || (mask & (1L << qubit)) != 0) {
+                return 0;
+            }
+            mask |= 1L << qubit;
+        }
+        return mask;
+    }
+
+    private static boolean isFusibleDual(WorkItem gate, ComplexMatrix operator) {
+        GateOpcode opcode = gate.getOpcode();
+        return opcode == GateOpcode.ISWAP || opcode != null && opcode.isControlled() && operator.getHeight() == 2;
+    }
+
+    /**
+     * Emits the gates collected on one qubit, as they are if there is one, otherwise as their product.
+     *
+     * @param gates the gates collected on the qubit in order, may be null
+     * @param fused the gates to emit into
+     */
+    private static void flush(List<WorkItem> gates, List<WorkItem> fused) {
+        if (gates == null) {
+            return;
+        }
+        if (gates.size() == 1) {
+            fused.add(gates.get(0));
+            return;
+        }
+        double[] product = ComplexMath.toInterleaved(GateDirector.decodeOperator(gates.get(0)));
+        double[] next = new double[product.length];
+        for (int i = 1; i < gates.size(); i++) {
+            // A later gate multiplies from the left.
+            ComplexMath.multiplyMatrix(ComplexMath.toInterleaved(GateDirector.decodeOperator(gates.get(i))), product,
+                    next, 2, 2, 2, false);
+            double[] swap = product;
+            product = next;
+            next = swap;
+        }
+        if (!isIdentity(product)) {
+            fused.add(new WorkItem(ComplexMath.fromInterleaved(product, 2, 2), gates.get(0).getTarget()));
+        }
+    }
+
+    /**
+     * Returns true if the single qubit gate decodes to a 2x2 operator.
+     *
+     * @param gate the single qubit gate
+     * @return true if it can be fused
+     */
+    private static boolean isFusible(WorkItem gate) {
+        ComplexMatrix operator = GateDirector.decodeOperator(gate);
+        return operator != null && operator.getHeight() == 2 && operator.getWidth() == 2;
+    }
+
+    private static boolean isIdentity(double[] operator, int dim) {
+        for (int row = 0; row < dim; row++) {
+            for (int column = 0; column < dim; column++) {
+                int i = 2 * (row * dim + column);
+                if (operator[i] != (row == column ? 1.0 : 0.0) || operator[i + 1] != 0.0) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean isIdentity(double[] operator) {
+        return operator[0] == 1.0 && operator[1] == 0.0 && operator[2] == 0.0 && operator[3] == 0.0
+                && operator[4] == 0.0 && operator[5] == 0.0 && operator[6] == 1.0 && operator[7] == 0.0;
+    }
+
+    /**
+     * The gates of an open block and the qubits they act on.
+     */
+    private static final class Block {
+        private long qubits;
+        private final List<WorkItem> gates = new ArrayList<>();
+    }
+}
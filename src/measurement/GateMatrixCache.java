@@ -0,0 +1,85 @@
+package measurement;
+
+import complex_classes.ComplexMatrix;
+import state.GateOpcode;
+import state.WorkItem;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * The GateMatrixCache keeps the 2x2 matrices of the rotation gates, RX, RY, RZ, R1 and R1i and their controlled forms,
+ * keyed by the gate and its angle, so a repeated angle is not built again with Math.cos and Math.sin. QFT applies the
+ * same few CR1 angles n^2 times and a variational circuit repeats its angles every layer.
+ * <p>
+ * The cache is shared by every {@link GateDirector}, so by every jqs instance, and is safe to use from several threads.
+ * It holds at most {@value #CAPACITY} matrices and evicts the least recently used one beyond that. The matrices are
+ * immutable, see {@link ComplexMatrix#immutableCopy(ComplexMatrix)}, so they are handed out shared. Angles are compared
+ * bit for bit, 0.0 and -0.0 are different keys, so a cached matrix is always the one the builder would return.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class GateMatrixCache {
+    static final int CAPACITY = 4096;
+
+    private static final Map<Key, ComplexMatrix> MATRICES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, ComplexMatrix> eldest) {
+            return size() > CAPACITY;
+        }
+    };
+
+    private GateMatrixCache() {
+    }
+
+    /**
+     * Returns the matrix of a rotation gate, building it on the first use of its angle.
+     *
+     * @param gate    the rotation, the same for the gate and its controlled form
+     * @param work    the work item holding the angle
+     * @param builder builds the matrix from the work item
+     * @return the immutable matrix
+     */
+    static ComplexMatrix get(GateOpcode gate, WorkItem work, Function<WorkItem, ComplexMatrix> builder) {
+        Key key = new Key(gate, Double.doubleToRawLongBits(work.getTheta()));
+        synchronized (MATRICES) {
+            ComplexMatrix matrix = MATRICES.get(key);
+            if (matrix != null) {
+                return matrix;
+            }
+        }
+        // Built outside the lock, two threads missing on the same angle build equal matrices.
+        ComplexMatrix matrix = ComplexMatrix.immutableCopy(builder.apply(work));
+        synchronized (MATRICES) {
+            MATRICES.put(key, matrix);
+        }
+        return matrix;
+    }
+
+    /**
+     * Returns the number of matrices held.
+     *
+     * @return the number of cached matrices, at most {@value #CAPACITY}
+     */
+    static int size() {
+        synchronized (MATRICES) {
+            return MATRICES.size();
+        }
+    }
+
+    /**
+     * Drops every matrix held, so a test that fills the cache with its own matrices leaves none for later callers.
+     */
+    static void clear() {
+        synchronized (MATRICES) {
+            MATRICES.clear();
+        }
+    }
+
+    private record Key(GateOpcode gate, long theta) {
+    }
+}
@@ -0,0 +1,123 @@
+package measurement;
+
+import state.StateTracker;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * The KernelScheduler runs the blocks of groups of a dense gate kernel, one after another or split across the
+ * {@link ForkJoinPool} of the tracker.
+ * <p>
+ * Every group of a kernel reads and writes its own basis states and no others, so the groups can run in any order and
+ * on any thread and still give the same amplitudes bit for bit. A state of at least
+ * {@link StateTracker#getParallelThreshold()} qubits is split in halves until each task holds
+ * {@link #MIN_GROUPS_PER_TASK} groups, or one block when the state has more than one chunk, so a chunk is still
+ * released by the task that worked on it. Smaller states run on the calling thread to avoid the overhead.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class KernelScheduler {
+    /**
+     * The fewest groups one task is given, so each task does enough work to cover its scheduling.
+     */
+    static final long MIN_GROUPS_PER_TASK = 1L << 12;
+
+    private KernelScheduler() {
+    }
+
+    /**
+     * The work of a kernel on a range of its groups, including releasing the chunks the range touched.
+     */
+    @FunctionalInterface
+    interface Block {
+        /**
+         * Applies the kernel to the groups from first up to last.
+         *
+         * @param first the first group
+         * @param last  one past the last group
+         */
+        void apply(long first, long last);
+    }
+
+    /**
+     * Applies the kernel to all of its groups, one block of groupsPerBlock at a time.
+     *
+     * @param tracker        the tracker holding the state, its pool and parallel threshold
+     * @param groups         the number of groups of the kernel, a power of two
+     * @param groupsPerBlock the groups per block, a power of two, see {@link MultiQubitGateBuilder#groupsPerChunk}
+     * @param block          the kernel
+     */
+    static void forEachBlock(StateTracker tracker, long groups, long groupsPerBlock, Block block) {
+        forEachBlock(tracker, groups, groupsPerBlock,
+                Math.max(MIN_GROUPS_PER_TASK, groupsPerBlock < groups ? groupsPerBlock : 0), block);
+    }
+
+    /**
+     * Applies the kernel to all of its groups, one block of groupsPerBlock at a time, giving each task at least
+     * leafSize groups. A cache blocked sweep counts its groups in cache blocks, so it passes a leaf size in blocks.
+     *
+     * @param tracker        the tracker holding the state, its pool and parallel threshold
+     * @param groups         the number of groups of the kernel, a power of two
+     * @param groupsPerBlock the groups per block, a power of two
+     * @param leafSize       the fewest groups one task is given, a multiple of groupsPerBlock
+     * @param block          the kernel
+     */
+    static void forEachBlock(StateTracker tracker, long groups, long groupsPerBlock, long leafSize, Block block) {
+        ForkJoinPool pool = tracker.getParallelPool();
+        if (tracker.getQubitCount() < tracker.getParallelThreshold() || pool.getParallelism() < 2
+                || groups <= leafSize) {
+            runBlocks(0, groups, groupsPerBlock, block);
+        } else {
+            pool.invoke(new BlockTask(0, groups, groupsPerBlock, leafSize, block));
+        }
+    }
+
+    /**
+     * Applies the kernel to the groups from first up to last one block at a time on the calling thread.
+     *
+     * @param first          the first group
+     * @param last           one past the last group
+     * @param groupsPerBlock the groups per block
+     * @param block          the kernel
+     */
+    private static void runBlocks(long first, long last, long groupsPerBlock, Block block) {
+        for (long start = first; start < last; start += groupsPerBlock) {
+            block.apply(start, Math.min(last, start + groupsPerBlock));
+        }
+    }
+
+    /**
+     * Splits a range of groups in halves until it is one leaf, then runs its blocks.
+     */
+    private static final class BlockTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+        private final long first;
+        private final long last;
+        private final long groupsPerBlock;
+        private final long leafSize;
+        private final transient Block block;
+
+        BlockTask(long first, long last, long groupsPerBlock, long leafSize, Block block) {
+            this.first = first;
+            this.last = last;
+            this.groupsPerBlock = groupsPerBlock;
+            this.leafSize = leafSize;
+            this.block = block;
+        }
+
+        @Override
+        protected void compute() {
+            if (last - first <= leafSize) {
+                runBlocks(first, last, groupsPerBlock, block);
+                return;
+            }
+            long middle = first + ((last - first) >>> 1);
+            invokeAll(new BlockTask(first, middle, groupsPerBlock, leafSize, block),
+                    new BlockTask(middle, last, groupsPerBlock, leafSize, block));
+        }
+    }
+}
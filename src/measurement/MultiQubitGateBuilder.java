@@ -3,11 +3,14 @@
 // and try to reduce memory and cpu usage.
 package measurement;
 
-import complex_classes.ComplexMath;
 import complex_classes.ComplexMatrix;
-import complex_classes.ComplexNumber;
+import state.GateOpcode;
+import state.SparseStateVector;
+import state.StateVector;
 import state.WorkItem;
 
+import java.util.Arrays;
+
 /**
  * The GateBuilder class is responsible for constructing and applying quantum gates
  * to a quantum state vector.
@@ -29,13 +32,13 @@ public class MultiQubitGateBuilder {
     }
 
     /**
-     * Returns a string representation of the final gate matrix.
+     * Returns a string representation of the active GateDirector.
      *
-     * @return A string representation of the final gate.
+     * @return A string representation of the GateDirector.
      */
     @Override
     public String toString() {
-        return gateD.finalGate.toString();
+        return gateD.toString();
     }
 
     /**
@@ -46,7 +49,7 @@ public class MultiQubitGateBuilder {
      */
     void dualAndMultiGateSetup(WorkItem work) {
         //Setup basic variables
-        int numQubits = (int) (Math.log(gateD.tracker.getStateVecSize()) / Math.log(2));
+        int numQubits = gateD.tracker.getQubitCount();
         int controlQubit, targetQubit;
         Integer[] controlQubits, targetQubits;
         //Determine which type of work item (gate) it is, dual or multi-qubit and test their values for viability.
@@ -60,7 +63,10 @@ public class MultiQubitGateBuilder {
                     }
                 }
             }
-            applyMultiQubitGate(work.getOperator(), controlQubits, targetQubits, numQubits);
+            if (Long.bitCount(maskOf(controlQubits) | maskOf(targetQubits)) != controlQubits.length + targetQubits.length) {
+                throw new IllegalArgumentException("Invalid control or target qubit.");
+            }
+            applyMultiQubitGate(work, controlQubits, targetQubits, numQubits);
         } else {
             controlQubit = work.getControl();
             targetQubit = work.getTarget();
@@ -73,6 +79,11 @@ public class MultiQubitGateBuilder {
 
     /**
      * Directly mutates the system state after applying the control gate in a single control single target gate.
+     * The gate is dispatched on its {@link GateOpcode}. Every controlled opcode, e.g. CY, CH, CS, CT, CRX, CRY, CRZ,
+     * CR1 and CR1i, is decoded to its 2x2 target operator and applied through
+     * {@link #applyControlledOperator(int, int, ComplexMatrix, int, boolean)}, with these exceptions. CZ negates the
+     * quarter of the state where both bits are 1. CX and SWAP only move amplitudes and go through the
+     * {@link PermutationGateBuilder}. ISWAP is applied as a 4x4 operator by the {@link UnitaryGateBuilder}.
      *
      * @param work  the WorkItem to evaluate and execute.
      * @param numQubits    the number of qubits, not the state vector size.
@@ -80,206 +91,407 @@ public class MultiQubitGateBuilder {
     private void applyDualQubitGate(WorkItem work, int numQubits) {
         int controlQubit = work.getControl();
         int targetQubit = work.getTarget();
-        int stateSize = 1 << numQubits;
-        ComplexMatrix newStateVector = new ComplexMatrix(stateSize, 1);
-        switch (work.getOperator()) {
-            case "CX" -> {
-                for (int i = 0; i < stateSize; i++) {
-                    int controlBit = (i >> controlQubit) & 1;
-                    if (controlBit == 1){
-                        WorkItem applyX = new WorkItem("X",targetQubit);
-                        ComplexMatrix matrix = gateD.getGate(applyX);
-                        ComplexMatrix thisMatrix = ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec());
-                        newStateVector.set(i, 0, thisMatrix.get(i,0));
-                    } else {
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
-                    }
-                }
-                gateD.tracker.setStateVec(newStateVector);
-            }
-            case "CZ" -> {
-                for (int i = 0; i < stateSize; i++) {
-                    int controlBit = (i >> controlQubit) & 1;
-                    int targetBit = (i >> targetQubit) & 1;
-                    if (controlBit == 1 && targetBit == 1) {
-                        // Apply phase shift of -1
-                        gateD.tracker.getStateVec().get(i, 0).setReal(-1 * (gateD.tracker.getStateVec().get(i, 0).getReal()));
-                        gateD.tracker.getStateVec().get(i, 0).setImag(-1 * (gateD.tracker.getStateVec().get(i, 0).getImag()));
-                    }
-                }
-            }
-            case "CY" -> {
-                for (int i = 0; i < stateSize; i++) {
-                    newStateVector.set(i, 0, new ComplexNumber());
-                }
-                for (int i = 0; i < stateSize; i++) {
-                    int controlBit = (i >> controlQubit) & 1;
-                    int targetBit = (i >> targetQubit) & 1;
-                    if (controlBit == 1) {
-                        // Apply Y rotation to target qubit
-                        int flippedState = i ^ (1 << targetQubit);
-                        if (targetBit == 0) {
-                            // |0> -> i|1>
-                            newStateVector.set(flippedState, 0, ComplexMath.multiplyComplexNumbers(new ComplexNumber(0, 1), gateD.tracker.getStateVec().get(i, 0)));
-                        } else {
-                            // |1> -> -i|0>
-                            newStateVector.set(flippedState, 0, ComplexMath.multiplyComplexNumbers(new ComplexNumber(0, -1), gateD.tracker.getStateVec().get(i, 0)));
+        long stateSize = 1L << numQubits;
+        StateVector state = gateD.tracker.getState();
+        if (state instanceof SparseStateVector sparse) {
+            applySparseDualQubitGate(work, sparse);
+            return;
+        }
+        switch (work.getOpcode()) {
+            case CZ -> {
+                // Only the quarter with both bits 1 changes, it is negated rather than multiplied so the sign of a zero
+                // part flips with it.
+                int[] positions = {Math.min(controlQubit, targetQubit), Math.max(controlQubit, targetQubit)};
+                long bothMask = (1L << controlQubit) | (1L << targetQubit);
+                long groupsPerChunk = groupsPerChunk(state.chunkBits(), positions);
+                gateD.runKernel(stateSize >> 2, groupsPerChunk, (first, last) -> {
+                    for (long group = first; group < last; group++) {
+                        long i = insertZeroBits(group, positions) | bothMask;
+                        double real = state.getReal(i);
+                        double imag = state.getImag(i);
+                        if (real != 0.0 || imag != 0.0) {
+                            // Apply phase shift of -1
+                            state.set(i, -1 * real, -1 * imag);
                         }
-                    } else {
-                        // Control qubit is |0>, do nothing
-                        newStateVector.set(i, 0, gateD.tracker.get(i, 0));
                     }
-                }
-                gateD.tracker.setStateVec(newStateVector);
+                    releaseChunks(state, insertZeroBits(first, positions) | bothMask, 0L);
+                });
             }
-            case "CS" -> {
-                for (int i = 0; i < stateSize; i++) {
-                    newStateVector.set(i, 0, new ComplexNumber());
+            case SWAP -> PermutationGateBuilder.applyExchange(gateD, new int[0], controlQubit, targetQubit);
+            case ISWAP -> UnitaryGateBuilder.applyOperator(gateD, new int[]{controlQubit, targetQubit},
+                    GateDirector.decodeOperator(work));
+            case null, default -> {
+                ComplexMatrix targetOperator = decodeControlledOperator(work);
+                if (GateDirector.isBitFlip(work, targetOperator)) {
+                    PermutationGateBuilder.applyFlip(gateD, new int[]{controlQubit}, new int[]{targetQubit});
+                } else {
+                    applyControlledOperator(controlQubit, targetQubit, targetOperator, numQubits,
+                            GateDirector.isDiagonal(work, targetOperator));
                 }
-                for(int i = 0; i < stateSize; i++){
-                    int controlBit = (i >> controlQubit) & 1;
-                    if (controlBit == 1){
-                        WorkItem applyS = new WorkItem("S",targetQubit);
-                        ComplexMatrix matrix = gateD.getGate(applyS);
-                        ComplexMatrix thisMatrix = ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec());
-                        newStateVector.set(i, 0, thisMatrix.get(i,0));
-                    } else {
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
-                    }
-                }
-                gateD.tracker.setStateVec(newStateVector);
-            }
-            case "CT" -> {
-                for (int i = 0; i < stateSize; i++) {
-                    newStateVector.set(i, 0, new ComplexNumber());
-                }
-                for(int i = 0; i < stateSize; i++){
-                    int controlBit = (i >> controlQubit) & 1;
-                    if (controlBit == 1){
-                        WorkItem applyT = new WorkItem("T",targetQubit);
-                        ComplexMatrix matrix = gateD.getGate(applyT);
-                        ComplexMatrix thisMatrix = ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec());
-                        newStateVector.set(i, 0, thisMatrix.get(i,0));
-                    } else {
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
-                    }
-                }
-                gateD.tracker.setStateVec(newStateVector);
             }
-            case "CRZ" -> {
-                for(int i = 0; i < stateSize; i++){
-                    int controlBit = (i >> controlQubit) & 1;
-                    if (controlBit == 1){
-                        WorkItem applyRZ = new WorkItem("RZ",targetQubit, work.getTheta());
-                        ComplexMatrix matrix = gateD.getGate(applyRZ);
-                        ComplexMatrix thisMatrix = ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec());
-                        newStateVector.set(i, 0, thisMatrix.get(i,0));
-                    } else {
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
-                    }
-                }
-                gateD.tracker.setStateVec(newStateVector);
+        }
+    }
+
+    /**
+     * Applies a single control single target gate to a sparse state, walking only the stored basis states.
+     *
+     * @param work   the WorkItem to evaluate and execute.
+     * @param sparse the sparse state vector of the tracker
+     */
+    private void applySparseDualQubitGate(WorkItem work, SparseStateVector sparse) {
+        long controlMask = 1L << work.getControl();
+        long targetMask = 1L << work.getTarget();
+        switch (work.getOpcode()) {
+            case CZ -> SparseGateBuilder.applyPhaseFlip(sparse, controlMask | targetMask);
+            case SWAP -> SparseGateBuilder.permute(gateD.tracker,
+                    i -> ((i & controlMask) == 0) != ((i & targetMask) == 0) ? i ^ controlMask ^ targetMask : i);
+            case ISWAP -> SparseGateBuilder.applyOperator(sparse, new int[]{work.getControl(), work.getTarget()},
+                    GateDirector.decodeOperator(work));
+            case null, default -> {
+                ComplexMatrix targetOperator = decodeControlledOperator(work);
+                SparseGateBuilder.applyControlledOperator(sparse, controlMask, work.getTarget(),
+                        SingleQubitGateBuilder.toPrimitiveOperator(targetOperator),
+                        GateDirector.isDiagonal(work, targetOperator));
             }
-            case "CR1" -> {
-                for(int i = 0; i < stateSize; i++){
-                    int controlBit = (i >> controlQubit) & 1;
-                    if (controlBit == 1){
-                        WorkItem applyR1 = new WorkItem("R1",targetQubit, work.getTheta());
-                        ComplexMatrix matrix = gateD.getGate(applyR1);
-                        ComplexMatrix thisMatrix = ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec());
-                        newStateVector.set(i, 0, thisMatrix.get(i,0));
+        }
+    }
+
+    /**
+     * Applies a 2x2 operator to the target qubit of every basis state whose control bit is 1, in place.
+     * <p>
+     * Only the quarter of the state where the control bit is 1 and the target bit is 0 is walked. Each index in that
+     * quarter is built by inserting a 0 at the lower and higher of the two qubit positions, then setting the control bit.
+     * Its partner with the target bit set is updated together with it, so the gate costs O(2^n) and allocates no new
+     * state vector.
+     * </p>
+     * <p>
+     * The quarter is walked one chunk, or pair of chunks, of the state vector at a time, the same as the single qubit
+     * kernel. A diagonal operator, e.g. CS, CT, CRZ, CR1 and CR1i, only scales each amplitude by its phase.
+     * </p>
+     *
+     * @param controlQubit   the control qubit
+     * @param targetQubit    the target qubit
+     * @param targetOperator the 2x2 operator to apply to the target qubit
+     * @param numQubits      the number of qubits, not the state vector size.
+     * @param diagonal       true if the operator is diagonal, see {@link GateDirector#isDiagonal(WorkItem, ComplexMatrix)}
+     */
+    private void applyControlledOperator(int controlQubit, int targetQubit, ComplexMatrix targetOperator, int numQubits,
+                                         boolean diagonal) {
+        double[] operator = SingleQubitGateBuilder.toPrimitiveOperator(targetOperator);
+        StateVector state = gateD.tracker.getState();
+        int lowQubit = Math.min(controlQubit, targetQubit);
+        int highQubit = Math.max(controlQubit, targetQubit);
+        long controlMask = 1L << controlQubit;
+        long targetMask = 1L << targetQubit;
+        long groups = 1L << (numQubits - 2);
+        int[] positions = {lowQubit, highQubit};
+        long groupsPerChunk = groupsPerChunk(state.chunkBits(), positions);
+
+        gateD.runKernel(groups, groupsPerChunk, (first, last) -> {
+            double[] amplitudes = VectorSupport.vectorizable(state, positions, first, last);
+            if (amplitudes != null) {
+                VectorGateKernels.applyPairs(amplitudes, positions, controlMask, targetMask, operator, diagonal, first,
+                        last);
+            } else {
+                for (long group = first; group < last; group++) {
+                    long zeroIdx = insertZeroBits(group, positions) | controlMask;
+                    if (diagonal) {
+                        SingleQubitGateBuilder.applyDiagonalPair(state, zeroIdx, zeroIdx | targetMask, operator);
                     } else {
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
+                        SingleQubitGateBuilder.applyPair(state, zeroIdx, zeroIdx | targetMask, operator);
                     }
                 }
-                gateD.tracker.setStateVec(newStateVector);
             }
-            case "CR1i" -> {
-                for(int i = 0; i < stateSize; i++){
-                    int controlBit = (i >> controlQubit) & 1;
-                    if (controlBit == 1){
-                        WorkItem applyR1i = new WorkItem("R1i",targetQubit, work.getTheta());
-                        ComplexMatrix matrix = gateD.getGate(applyR1i);
-                        ComplexMatrix thisMatrix = ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec());
-                        newStateVector.set(i, 0, thisMatrix.get(i,0));
-                    } else {
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
-                    }
-                }
-                gateD.tracker.setStateVec(newStateVector);
+            releaseChunks(state, insertZeroBit(insertZeroBit(first, lowQubit), highQubit) | controlMask, targetMask);
+        });
+    }
+
+    /**
+     * Returns how many consecutive groups of a kernel fall inside one chunk of the state vector, or one set of paired
+     * chunks when the gate acts on qubits at or above the chunk. A kernel that inserts a 0 bit at each of the qubits to
+     * form its groups walks them in blocks of this size.
+     *
+     * @param chunkBits the chunk size of the state vector, see {@link StateVector#chunkBits()}
+     * @param qubits    the qubits the kernel inserts a bit at
+     * @return the number of groups per block, at least 1
+     */
+    static long groupsPerChunk(int chunkBits, int... qubits) {
+        int inside = 0;
+        for (int qubit : qubits) {
+            if (qubit < chunkBits) {
+                inside++;
             }
-            case "SWAP" -> {
-                for (int i = 0; i < stateSize; i++){
-                    int bit1 = (i >> controlQubit) & 1;
-                    int bit2 = (i >> targetQubit) & 1;
-                    if(bit1 != bit2){
-                        int swappedIndex = i ^ (1 << controlQubit) ^ (1 << targetQubit);
-                        newStateVector.set(i, 0, gateD.tracker.getStateVec().get(swappedIndex, 0));
-                    } else {
-                        newStateVector.set(i,0,gateD.tracker.getStateVec().get(i,0));
-                    }
-                }
-                gateD.tracker.setStateVec(newStateVector);
+        }
+        return 1L << Math.max(0, chunkBits - inside);
+    }
+
+    /**
+     * Releases the chunks a block of groups touched, the chunk holding the first basis state of the block and the
+     * chunk holding its partner.
+     *
+     * @param state    the state vector
+     * @param firstIdx the first basis state of the block
+     * @param partner  the bit that turns a basis state of the block into its partner
+     */
+    static void releaseChunks(StateVector state, long firstIdx, long partner) {
+        int chunkBits = state.chunkBits();
+        long chunk = firstIdx >>> chunkBits;
+        long partnerChunk = (firstIdx | partner) >>> chunkBits;
+        state.releaseChunk(chunk);
+        if (partnerChunk != chunk) {
+            state.releaseChunk(partnerChunk);
+        }
+    }
+
+    /**
+     * Releases every chunk a block of groups touched, the chunks holding the first basis state of the block combined
+     * with each of the offsets. A chunk shared by consecutive offsets is released once.
+     *
+     * @param state    the state vector
+     * @param firstIdx the first basis state of the block
+     * @param offsets  the bits each basis state of a group adds to its base
+     */
+    static void releaseChunks(StateVector state, long firstIdx, long[] offsets) {
+        int chunkBits = state.chunkBits();
+        long previous = -1;
+        for (long offset : offsets) {
+            long chunk = (firstIdx | offset) >>> chunkBits;
+            if (chunk != previous) {
+                state.releaseChunk(chunk);
+                previous = chunk;
             }
         }
     }
 
-    private void applyMultiQubitGate(String operator, Integer[] controlQubits, Integer[] targetQubits, int numQubits) {
-        int stateSize = 1 << numQubits;
-        ComplexMatrix newStateVector = new ComplexMatrix(gateD.tracker.getStateVecSize(), 1);
-        switch(operator){
-            case "TOFFOLI" -> {
-                int targetQubit = targetQubits[0];
-                for (int i = 0; i < stateSize; i++) {
-                    int controlBitOne = (i >> controlQubits[0]) & 1;
-                    int controlBitTwo = (i >> controlQubits[1]) & 1;
+    /**
+     * Inserts a 0 bit into value at the given bit position, shifting the higher bits up by one.
+     *
+     * @param value the value to expand
+     * @param bit   the position of the new 0 bit
+     * @return the expanded value
+     */
+    static long insertZeroBit(long value, int bit) {
+        long lowMask = (1L << bit) - 1;
+        return ((value & ~lowMask) << 1) | (value & lowMask);
+    }
 
-                    if (controlBitOne == 1 && controlBitTwo == 1) {
-                        // Flip the target bit
-                        int newState = i ^ (1 << targetQubit);
-                        newStateVector.set(newState, 0, gateD.tracker.get(i, 0));
-                    } else {
-                        // Keep the state as is
-                        newStateVector.set(i, 0, gateD.tracker.get(i, 0));
-                    }
+    /**
+     * Directly mutates the system state after applying a gate with one or more controls and one or more targets.
+     * <p>
+     * TOFFOLI, CXX, CSWAP and multi control X gates only move amplitudes, so they are swapped in place by the
+     * {@link PermutationGateBuilder} without any arithmetic or scratch state vector. A work item that carries its
+     * operator matrix, e.g. a block of fused gates, is applied to its targets by the {@link UnitaryGateBuilder}.
+     * </p>
+     *
+     * @param work          the WorkItem to evaluate and execute.
+     * @param controlQubits the control qubits
+     * @param targetQubits  the target qubits
+     * @param numQubits    the number of qubits, not the state vector size.
+     */
+    private void applyMultiQubitGate(WorkItem work, Integer[] controlQubits, Integer[] targetQubits, int numQubits) {
+        StateVector state = gateD.tracker.getState();
+        if (work.getMatrix() != null) {
+            int[] targets = toIntArray(targetQubits);
+            if (state instanceof SparseStateVector sparse) {
+                UnitaryGateBuilder.validate(numQubits, targets, work.getMatrix());
+                SparseGateBuilder.applyOperator(sparse, targets, work.getMatrix());
+            } else {
+                UnitaryGateBuilder.applyOperator(gateD, targets, work.getMatrix());
+            }
+            return;
+        }
+        if (state instanceof SparseStateVector) {
+            applySparseMultiQubitGate(work, controlQubits, targetQubits);
+            return;
+        }
+        int[] controls = toIntArray(controlQubits);
+        switch (work.getOpcode()) {
+            case TOFFOLI -> PermutationGateBuilder.applyFlip(gateD, controls, new int[]{targetQubits[0]});
+            case CXX -> PermutationGateBuilder.applyFlip(gateD, controls,
+                    new int[]{targetQubits[0], targetQubits[1]});
+            case CSWAP -> PermutationGateBuilder.applyExchange(gateD, controls, targetQubits[0],
+                    targetQubits[1]);
+            case null, default -> {
+                ComplexMatrix targetOperator = decodeMultiControlledOperator(work);
+                if (GateDirector.isBitFlip(work, targetOperator)) {
+                    PermutationGateBuilder.applyFlip(gateD, controls, toIntArray(targetQubits));
+                } else {
+                    applyMultiControlledOperator(targetOperator, controlQubits, targetQubits, numQubits,
+                            GateDirector.isDiagonal(work, targetOperator));
                 }
-                gateD.tracker.setStateVec(newStateVector);
             }
-            case "CXX" -> {
-                for (int i = 0; i < stateSize; i++){
-                    int controlBit = (i >> controlQubits[0]) & 1;
-                    int targetQubitOne = targetQubits[0];
-                    int targetQubitTwo = targetQubits[1];
+        }
+    }
 
-                    if (controlBit == 1){
-                        //Flip the target bits
-                        int newState = i ^ (1 << targetQubitOne) ^ (1 << targetQubitTwo);
-                        newStateVector.set(newState, 0, gateD.tracker.get(i,0));
-                    } else {
-                        // Don't flip the target bits
-                        newStateVector.set(i, 0, gateD.tracker.get(i,0));
+    /**
+     * Applies the single qubit gate to each target qubit of every basis state whose control bits are all 1, in place.
+     * Used by CGate, CCGate and XCGate with any operator {@link GateDirector#decodeOperator(WorkItem)} decodes to 2x2.
+     * <p>
+     * For each target only the subspace where every control is 1 is walked. Its 2^(n-c-1) pairs are built by inserting
+     * a 0 at each control and the target position, then setting the control bits, rather than testing all 2^n basis
+     * states.
+     * </p>
+     *
+     * @param decoded       the 2x2 operator from {@link #decodeMultiControlledOperator(WorkItem)}
+     * @param controlQubits the control qubits
+     * @param targetQubits  the target qubits
+     * @param numQubits     the number of qubits, not the state vector size.
+     * @param diagonal      true if the operator is diagonal, see {@link GateDirector#isDiagonal(WorkItem, ComplexMatrix)}
+     */
+    private void applyMultiControlledOperator(ComplexMatrix decoded, Integer[] controlQubits, Integer[] targetQubits,
+                                              int numQubits, boolean diagonal) {
+        double[] targetOperator = SingleQubitGateBuilder.toPrimitiveOperator(decoded);
+        StateVector state = gateD.tracker.getState();
+        long controlMask = maskOf(controlQubits);
+        for (int target : targetQubits) {
+            long targetMask = 1L << target;
+            int[] positions = sortedPositions(controlQubits, target);
+            long groups = 1L << (numQubits - positions.length);
+            long groupsPerChunk = groupsPerChunk(state.chunkBits(), positions);
+
+            gateD.runKernel(groups, groupsPerChunk, (first, last) -> {
+                double[] amplitudes = VectorSupport.vectorizable(state, positions, first, last);
+                if (amplitudes != null) {
+                    VectorGateKernels.applyPairs(amplitudes, positions, controlMask, targetMask, targetOperator,
+                            diagonal, first, last);
+                } else {
+                    for (long group = first; group < last; group++) {
+                        long zeroIdx = insertZeroBits(group, positions) | controlMask;
+                        if (diagonal) {
+                            SingleQubitGateBuilder.applyDiagonalPair(state, zeroIdx, zeroIdx | targetMask,
+                                    targetOperator);
+                        } else {
+                            SingleQubitGateBuilder.applyPair(state, zeroIdx, zeroIdx | targetMask, targetOperator);
+                        }
                     }
                 }
-                gateD.tracker.setStateVec(newStateVector);
-            }
-            case "CSWAP" -> {
-                int controlQubit = controlQubits[0];
-                int targetQubitOne = targetQubits[0];
-                int targetQubitTwo = targetQubits[1];
-                for(int i =0; i < stateSize; i++){
-                    int bit1 = (i >> controlQubit) & 1;
-                    int bit2 = (i >> targetQubitOne) & 1;
-                    int bit3 = (i >> targetQubitTwo) & 1;
+                releaseChunks(state, insertZeroBits(first, positions) | controlMask, targetMask);
+            });
+        }
+    }
 
-                    if(bit1 == 1 && (bit2 != bit3)){
-                        int swappedIndex = i ^ (1 << targetQubitOne) ^ (1 << targetQubitTwo);
-                        newStateVector.set(i, 0, gateD.tracker.getStateVec().get(swappedIndex, 0));
-                    } else {
-                        newStateVector.set(i, 0, gateD.tracker.getStateVec().get(i,0));
-                    }
+    /**
+     * Decodes the single qubit gate of a single control single target gate.
+     *
+     * @param work the WorkItem holding the gate name
+     * @return the 2x2 operator
+     */
+    private static ComplexMatrix decodeControlledOperator(WorkItem work) {
+        GateOpcode opcode = work.getOpcode();
+        ComplexMatrix targetOperator = opcode == null || !opcode.isControlled() ? null
+                : GateDirector.decodeOperator(work);
+        if (targetOperator == null || targetOperator.getHeight() != 2) {
+            throw new IllegalArgumentException("Unknown controlled gate: " + work.getOperator());
+        }
+        return targetOperator;
+    }
+
+    /**
+     * Decodes the single qubit gate of a multi control gate.
+     *
+     * @param work the WorkItem holding the gate name
+     * @return the 2x2 operator
+     */
+    private static ComplexMatrix decodeMultiControlledOperator(WorkItem work) {
+        ComplexMatrix targetOperator = GateDirector.decodeOperator(work);
+        if (targetOperator == null || targetOperator.getHeight() != 2) {
+            throw new IllegalArgumentException("Unknown multi-qubit gate: " + work.getOperator());
+        }
+        return targetOperator;
+    }
+
+    /**
+     * Returns the control qubits and the target qubit in ascending order, the positions a kernel inserts a 0 at.
+     *
+     * @param controlQubits the control qubits
+     * @param target        the target qubit
+     * @return the sorted positions
+     */
+    private static int[] sortedPositions(Integer[] controlQubits, int target) {
+        int[] positions = new int[controlQubits.length + 1];
+        for (int i = 0; i < controlQubits.length; i++) {
+            positions[i] = controlQubits[i];
+        }
+        positions[controlQubits.length] = target;
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    /**
+     * Inserts a 0 bit at each of the positions, lowest first, so each position refers to the bit in the result.
+     *
+     * @param value     the value to expand
+     * @param positions the positions of the new 0 bits in ascending order
+     * @return the expanded value
+     */
+    static long insertZeroBits(long value, int[] positions) {
+        for (int position : positions) {
+            value = insertZeroBit(value, position);
+        }
+        return value;
+    }
+
+    /**
+     * Applies a gate with one or more controls and one or more targets to a sparse state, moving only the stored
+     * amplitudes.
+     *
+     * @param work          the WorkItem to evaluate and execute.
+     * @param controlQubits the control qubits
+     * @param targetQubits  the target qubits
+     */
+    private void applySparseMultiQubitGate(WorkItem work, Integer[] controlQubits, Integer[] targetQubits) {
+        long allControls = maskOf(controlQubits);
+        long firstTarget = 1L << targetQubits[0];
+        switch (work.getOpcode()) {
+            case TOFFOLI -> SparseGateBuilder.permute(gateD.tracker,
+                    i -> (i & allControls) == allControls ? i ^ firstTarget : i);
+            case CXX -> {
+                long targets = firstTarget | (1L << targetQubits[1]);
+                SparseGateBuilder.permute(gateD.tracker, i -> (i & allControls) == allControls ? i ^ targets : i);
+            }
+            case CSWAP -> {
+                long secondTarget = 1L << targetQubits[1];
+                SparseGateBuilder.permute(gateD.tracker,
+                        i -> (i & allControls) == allControls && ((i & firstTarget) == 0) != ((i & secondTarget) == 0)
+                                ? i ^ firstTarget ^ secondTarget : i);
+            }
+            case null, default -> {
+                ComplexMatrix targetOperator = decodeMultiControlledOperator(work);
+                SparseStateVector sparse = (SparseStateVector) gateD.tracker.getState();
+                for (int target : targetQubits) {
+                    SparseGateBuilder.applyControlledOperator(sparse, allControls, target,
+                            SingleQubitGateBuilder.toPrimitiveOperator(targetOperator),
+                            GateDirector.isDiagonal(work, targetOperator));
                 }
             }
         }
-        gateD.tracker.setStateVec(newStateVector);
     }
-}
\ No newline at end of file
+
+    /**
+     * Returns a mask with the bit of each qubit set.
+     *
+     * @param qubits the qubits
+     * @return the mask
+     */
+    static long maskOf(Integer[] qubits) {
+        long mask = 0;
+        for (Integer qubit : qubits) {
+            mask |= 1L << qubit;
+        }
+        return mask;
+    }
+
+    /**
+     * Unboxes the qubits of a WorkItem.
+     *
+     * @param qubits the qubits
+     * @return the qubits as an int[]
+     */
+    private static int[] toIntArray(Integer[] qubits) {
+        int[] result = new int[qubits.length];
+        for (int i = 0; i < qubits.length; i++) {
+            result[i] = qubits[i];
+        }
+        return result;
+    }
+}
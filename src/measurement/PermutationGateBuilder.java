@@ -0,0 +1,114 @@
+package measurement;
+
+import state.StateVector;
+
+import java.util.Arrays;
+
+/**
+ * The PermutationGateBuilder holds the in place kernels for gates that only move amplitudes between basis states: X,
+ * CX, TOFFOLI, CXX and multi control X gates flip target bits, SWAP and CSWAP exchange two bits.
+ * <p>
+ * Each kernel walks only the basis states whose control bits are all 1, built by inserting 0 bits at the control and
+ * target positions and setting the control bits, and swaps the amplitudes of each pair of basis states the gate
+ * exchanges. No amplitude is multiplied and no state vector is allocated, the values are moved exactly as stored.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class PermutationGateBuilder {
+
+    private PermutationGateBuilder() {
+    }
+
+    /**
+     * Flips every target bit of each basis state whose control bits are all 1, in place.
+     *
+     * @param gateD    the GateDirector holding the state vector to update
+     * @param controls the control qubits, empty for X
+     * @param targets  the target qubits
+     */
+    static void applyFlip(GateDirector gateD, int[] controls, int[] targets) {
+        long flipMask = maskOf(targets);
+        long lowestTarget = Long.lowestOneBit(flipMask);
+        // Each basis state is paired with the one with every target bit flipped, list each pair once by its member with
+        // the lowest target bit clear.
+        long[] offsets = new long[1 << (targets.length - 1) << 1];
+        int next = 0;
+        long subset = 0;
+        do {
+            if ((subset & lowestTarget) == 0) {
+                offsets[next++] = subset;
+                offsets[next++] = subset ^ flipMask;
+            }
+            subset = (subset - flipMask) & flipMask;
+        } while (subset != 0);
+        swapPairs(gateD, positions(controls, targets), maskOf(controls), offsets);
+    }
+
+    /**
+     * Exchanges the first and second target bits of each basis state whose control bits are all 1, in place.
+     *
+     * @param gateD    the GateDirector holding the state vector to update
+     * @param controls the control qubits, empty for SWAP
+     * @param first    the first target qubit
+     * @param second   the second target qubit
+     */
+    static void applyExchange(GateDirector gateD, int[] controls, int first, int second) {
+        long[] offsets = {1L << first, 1L << second};
+        swapPairs(gateD, positions(controls, new int[]{first, second}), maskOf(controls), offsets);
+    }
+
+    /**
+     * Swaps the amplitudes of base | offsets[2k] and base | offsets[2k + 1] for every base built from the positions.
+     *
+     * @param gateD     the GateDirector holding the state vector to update
+     * @param positions the control and target qubits in ascending order
+     * @param setMask   the control bits set in every base
+     * @param offsets   the pairs of target bit patterns to swap
+     */
+    private static void swapPairs(GateDirector gateD, int[] positions, long setMask, long[] offsets) {
+        StateVector state = gateD.tracker.getState();
+        long groups = 1L << (gateD.tracker.getQubitCount() - positions.length);
+        long groupsPerChunk = MultiQubitGateBuilder.groupsPerChunk(state.chunkBits(), positions);
+
+        gateD.runKernel(groups, groupsPerChunk, (first, last) -> {
+            double[] amplitudes = VectorSupport.vectorizable(state, positions, first, last);
+            if (amplitudes != null) {
+                VectorGateKernels.swapPairs(amplitudes, positions, setMask, offsets, first, last);
+            } else {
+                for (long group = first; group < last; group++) {
+                    long base = MultiQubitGateBuilder.insertZeroBits(group, positions) | setMask;
+                    for (int k = 0; k < offsets.length; k += 2) {
+                        swap(state, base | offsets[k], base | offsets[k + 1]);
+                    }
+                }
+            }
+            MultiQubitGateBuilder.releaseChunks(state, MultiQubitGateBuilder.insertZeroBits(first, positions) | setMask,
+                    offsets);
+        });
+    }
+
+    private static void swap(StateVector state, long first, long second) {
+        double real = state.getReal(first);
+        double imag = state.getImag(first);
+        state.set(first, state.getReal(second), state.getImag(second));
+        state.set(second, real, imag);
+    }
+
+    private static int[] positions(int[] controls, int[] targets) {
+        int[] positions = Arrays.copyOf(controls, controls.length + targets.length);
+        System.arraycopy(targets, 0, positions, controls.length, targets.length);
+        Arrays.sort(positions);
+        return positions;
+    }
+
+    private static long maskOf(int[] qubits) {
+        long mask = 0;
+        for (int qubit : qubits) {
+            mask |= 1L << qubit;
+        }
+        return mask;
+    }
+}
@@ -30,7 +30,7 @@ import state.WorkItem;
 public class QFTBuilder {
     private final GateDirector gateD;
     private final int numQubits;
-    private final int stateSize;
+    private final long stateSize;
 
     /**
      * Applies the Quantum Fourier Transform to the current state vector.
@@ -65,7 +65,7 @@ public class QFTBuilder {
 //        System.out.println("In QFT.");
         double theta = (2 * Math.PI / Math.pow(2, k) / 2);
         WorkItem Rk = new WorkItem("CR1", numQubits - 1 - controlQubit, numQubits - 1 - targetQubit, theta);
-        gateD.getGate(Rk);
+        gateD.applyGate(Rk);
     }
 
     /**
@@ -96,16 +96,17 @@ public class QFTBuilder {
 //        System.out.println("In QFT inverse.");
         double theta = (2 * Math.PI / Math.pow(2, k) / 2);
         WorkItem Rki = new WorkItem("CR1i", numQubits - 1 - controlQubit, numQubits - 1 - targetQubit, theta);
-        gateD.getGate(Rki);
+        gateD.applyGate(Rki);
     }
 
     /**
-     * Swaps the order of qubits in the state vector.
+     * Swaps the order of qubits in the state vector. Each SWAP only relabels its two qubits, the amplitudes are moved
+     * once, when the state is next read.
      */
     private void swapQubits() {
         for (int i = 0; i < numQubits / 2; i++) {
             WorkItem applySwap = new WorkItem("SWAP", i, numQubits - 1 - i);
-            gateD.getGate(applySwap);
+            gateD.applyGate(applySwap);
         }
     }
 
@@ -115,12 +116,11 @@ public class QFTBuilder {
      * @param targetQubit the qubit to apply the Hadamard gate to
      * @see WorkItem
      * @see ComplexMatrix
-     * @see ComplexMath#multiplyMatrix(ComplexMatrix, ComplexMatrix)
+     * @see GateDirector#applyGate(WorkItem)
      */
     private void applyHadamard(int targetQubit) {
         WorkItem applyHadamard = new WorkItem("H", targetQubit);
-        ComplexMatrix matrix = gateD.getGate(applyHadamard);
-        gateD.tracker.setStateVec(ComplexMath.multiplyMatrix(matrix, gateD.tracker.getStateVec()));
+        gateD.applyGate(applyHadamard);
     }
 
     /**
@@ -131,8 +131,8 @@ public class QFTBuilder {
      */
     public QFTBuilder(GateDirector gateD) {
         this.gateD = gateD;
-        this.stateSize = gateD.tracker.getStateVecSize();
-        this.numQubits = (int) (Math.log(stateSize) / Math.log(2));
+        this.stateSize = gateD.tracker.getStateLength();
+        this.numQubits = gateD.tracker.getQubitCount();
     }
 
     /**
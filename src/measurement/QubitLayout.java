@@ -0,0 +1,314 @@
+package measurement;
+
+import state.QubitOrder;
+import state.SparseStateVector;
+import state.StateTracker;
+import state.StateVector;
+import state.WorkItem;
+
+/**
+ * The QubitLayout maps the logical qubits gates are written against to the physical bit of the basis state index that
+ * holds each of them in the state vector.
+ * <p>
+ * A gate on a high physical bit pairs amplitudes 2^bit apart, so every gate on it strides across the whole state
+ * vector and cannot be applied one cache block at a time. Before a run of gates that touch high qubits the
+ * {@link GateDirector} moves those qubits to low physical bits with {@link #moveTo(int[])}, a single pass that
+ * exchanges the amplitudes of basis states whose moved bits differ, and then applies the run to the relabeled state.
+ * Moving qubits only moves amplitudes, no amplitude is multiplied, so the state is the same bit for bit once the
+ * layout is moved back to the identity.
+ * </p>
+ * <p>
+ * A SWAP does not move any amplitude, {@link #exchange(int, int)} only swaps the physical bits of its two qubits in the
+ * layout. A layout other than the identity is registered with the tracker as its {@link QubitOrder}, so it is kept
+ * between gates and only moved back when the tracker is read, measured or cloned.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class QubitLayout implements QubitOrder {
+    private final StateTracker tracker;
+    private final int[] physical;
+
+    /**
+     * Creates the identity layout, every logical qubit held by the physical bit of the same index.
+     *
+     * @param tracker the tracker holding the state vector the layout describes
+     */
+    QubitLayout(StateTracker tracker) {
+        this.tracker = tracker;
+        this.physical = identity(tracker.getQubitCount());
+    }
+
+    /**
+     * Returns the layout the state vector of the tracker is stored in, the identity if its qubits are not relabeled.
+     *
+     * @param tracker the tracker
+     * @return the layout of its state vector
+     */
+    static QubitLayout of(StateTracker tracker) {
+        return tracker.getQubitOrder() instanceof QubitLayout layout ? layout : new QubitLayout(tracker);
+    }
+
+    /**
+     * Returns true if every logical qubit is held by the physical bit of the same index.
+     *
+     * @return true for the identity layout
+     */
+    boolean isIdentity() {
+        for (int qubit = 0; qubit < physical.length; qubit++) {
+            if (physical[qubit] != qubit) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the physical bit holding a logical qubit. Qubits outside the state are returned as they are so the gate
+     * builders still reject them.
+     *
+     * @param qubit the logical qubit
+     * @return the physical bit
+     */
+    int physical(int qubit) {
+        return qubit < 0 || qubit >= physical.length ? qubit : physical[qubit];
+    }
+
+    /**
+     * Returns the physical bits holding a set of logical qubits.
+     *
+     * @param qubits a bit set of logical qubits
+     * @return the bit set of the physical bits holding them
+     */
+    long physicalMask(long qubits) {
+        long mask = 0;
+        for (long rest = qubits; rest != 0; rest &= rest - 1) {
+            mask |= 1L << physical(Long.numberOfTrailingZeros(rest));
+        }
+        return mask;
+    }
+
+    /**
+     * Returns the physical bits holding the logical qubits, in the same order.
+     *
+     * @param qubits the logical qubits
+     * @return the physical bits
+     */
+    int[] toPhysical(int[] qubits) {
+        int[] result = new int[qubits.length];
+        for (int i = 0; i < qubits.length; i++) {
+            result[i] = physical(qubits[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Swaps two logical qubits by swapping the physical bits that hold them, the same as a SWAP gate without moving any
+     * amplitude.
+     *
+     * @param first  the first logical qubit
+     * @param second the second logical qubit
+     */
+    void exchange(int first, int second) {
+        int held = physical[first];
+        physical[first] = physical[second];
+        physical[second] = held;
+        register();
+    }
+
+    /**
+     * Returns a copy of the gate with its logical qubits replaced by the physical bits holding them.
+     *
+     * @param gate the gate on logical qubits
+     * @return the same gate on physical bits, the gate itself for the identity layout
+     */
+    WorkItem toPhysical(WorkItem gate) {
+        if (isIdentity()) {
+            return gate;
+        }
+        if (gate.isSingleTarget() && gate.getMatrix() != null) {
+            return new WorkItem(gate.getMatrix(), physical(gate.getTarget()));
+        }
+        if (gate.isSingleTarget()) {
+            return new WorkItem(gate.getOperator(), physical(gate.getTarget()), gate.getTheta());
+        }
+        if (gate.isDualTarget()) {
+            return new WorkItem(gate.getOperator(), physical(gate.getControl()), physical(gate.getTarget()),
+                    gate.getTheta());
+        }
+        if (gate.getMatrix() != null) {
+            return new WorkItem(gate.getMatrix(), toPhysical(gate.getTargets()));
+        }
+        return new WorkItem(gate.getOperator(), toPhysical(gate.getControls()), toPhysical(gate.getTargets()));
+    }
+
+    /**
+     * Returns a layout that holds every one of the qubits on a physical bit below lowBits, changing as few qubits as
+     * possible. A qubit that has to move down exchanges bits with a low qubit outside the set, preferring one that
+     * returns to its own bit by the exchange.
+     *
+     * @param qubits  a bit set of logical qubits, at most lowBits of them
+     * @param lowBits the number of low physical bits
+     * @return the target layout, logical qubit to physical bit
+     */
+    int[] bringLow(long qubits, int lowBits) {
+        int[] target = physical.clone();
+        int[] logical = inverse(target);
+        for (long rest = qubits; rest != 0; rest &= rest - 1) {
+            int qubit = Long.numberOfTrailingZeros(rest);
+            int high = target[qubit];
+            if (high < lowBits) {
+                continue;
+            }
+            int low = -1;
+            for (int bit = lowBits - 1; bit >= 0; bit--) {
+                int occupant = logical[bit];
+                if ((qubits & (1L << occupant)) == 0 && (low < 0 || occupant == high)) {
+                    low = bit;
+                }
+            }
+            int displaced = logical[low];
+            target[qubit] = low;
+            target[displaced] = high;
+            logical[low] = qubit;
+            logical[high] = displaced;
+        }
+        return target;
+    }
+
+    /**
+     * Moves the amplitudes of the state vector so the logical qubits are held by the physical bits of the target
+     * layout.
+     * <p>
+     * A dense state is moved in place. The change of layout is a permutation of the physical bits, which is split into
+     * at most two sets of disjoint bit exchanges, and each set is applied in one pass that swaps the amplitude of every
+     * basis state with the basis state its exchanged bits are swapped in. A sparse state moves each stored amplitude
+     * once into the scratch state vector.
+     * </p>
+     *
+     * @param target the layout to move to, logical qubit to physical bit
+     */
+    void moveTo(int[] target) {
+        int[] move = new int[physical.length];
+        for (int qubit = 0; qubit < physical.length; qubit++) {
+            move[physical[qubit]] = target[qubit];
+        }
+        System.arraycopy(target, 0, physical, 0, physical.length);
+        register();
+        if (tracker.getState() instanceof SparseStateVector) {
+            SparseGateBuilder.permute(tracker, index -> permuteBits(index, move));
+            return;
+        }
+        // Each cycle b0 -> b1 -> ... -> b(m-1) of the bit permutation is the reflection b(i) <-> b(-i) followed by the
+        // reflection b(i) <-> b(1 - i), both of them sets of disjoint exchanges.
+        int[] first = identity(move.length);
+        int[] second = identity(move.length);
+        boolean[] seen = new boolean[move.length];
+        for (int start = 0; start < move.length; start++) {
+            if (seen[start] || move[start] == start) {
+                continue;
+            }
+            int length = 0;
+            int[] cycle = new int[move.length];
+            for (int bit = start; !seen[bit]; bit = move[bit]) {
+                seen[bit] = true;
+                cycle[length++] = bit;
+            }
+            for (int i = 0; i < length; i++) {
+                first[cycle[i]] = cycle[(length - i) % length];
+                second[cycle[i]] = cycle[(length + 1 - i) % length];
+            }
+        }
+        exchangeBits(first);
+        exchangeBits(second);
+    }
+
+    /**
+     * Moves the state vector back to the identity layout.
+     */
+    @Override
+    public void restore() {
+        if (!isIdentity()) {
+            moveTo(identity(physical.length));
+        }
+    }
+
+    /**
+     * Registers this layout with the tracker while it is not the identity, so reading the tracker moves it back.
+     */
+    private void register() {
+        tracker.setQubitOrder(isIdentity() ? null : this);
+    }
+
+    /**
+     * Swaps the amplitude of every basis state with the basis state whose bits are exchanged by an involution of the
+     * physical bits, each pair once, in place.
+     *
+     * @param exchange maps each physical bit to the bit it is exchanged with, itself if it stays
+     */
+    private void exchangeBits(int[] exchange) {
+        long moved = 0;
+        for (int bit = 0; bit < exchange.length; bit++) {
+            if (exchange[bit] != bit) {
+                moved |= 1L << bit;
+            }
+        }
+        if (moved == 0) {
+            return;
+        }
+        StateVector state = tracker.getState();
+        long movedMask = moved;
+        KernelScheduler.forEachBlock(tracker, state.size(), 1L << state.chunkBits(), (first, last) -> {
+            for (long index = first; index < last; index++) {
+                long partner = (index & ~movedMask) | permuteBits(index & movedMask, exchange);
+                if (partner > index) {
+                    double real = state.getReal(index);
+                    double imag = state.getImag(index);
+                    state.set(index, state.getReal(partner), state.getImag(partner));
+                    state.set(partner, real, imag);
+                }
+            }
+        });
+    }
+
+    /**
+     * Moves each set bit of the index to the bit the permutation maps it to.
+     *
+     * @param index the basis state
+     * @param move  maps each physical bit to its new bit
+     * @return the basis state with its bits moved
+     */
+    private static long permuteBits(long index, int[] move) {
+        long result = 0;
+        for (long rest = index; rest != 0; rest &= rest - 1) {
+            result |= 1L << move[Long.numberOfTrailingZeros(rest)];
+        }
+        return result;
+    }
+
+    private Integer[] toPhysical(Integer[] qubits) {
+        Integer[] result = new Integer[qubits.length];
+        for (int i = 0; i < qubits.length; i++) {
+            result[i] = physical(qubits[i]);
+        }
+        return result;
+    }
+
+    private static int[] inverse(int[] layout) {
+        int[] inverse = new int[layout.length];
+        for (int qubit = 0; qubit < layout.length; qubit++) {
+            inverse[layout[qubit]] = qubit;
+        }
+        return inverse;
+    }
+
+    private static int[] identity(int qubits) {
+        int[] layout = new int[qubits];
+        for (int qubit = 0; qubit < qubits; qubit++) {
+            layout[qubit] = qubit;
+        }
+        return layout;
+    }
+}
@@ -1,12 +1,17 @@
 package measurement;
 
+import complex_classes.ComplexMath;
 import complex_classes.ComplexMatrix;
+import state.SparseStateVector;
+import state.StateVector;
 import state.WorkItem;
 
-import static complex_classes.ComplexGateEnums.IDENTITY;
+import static complex_classes.ComplexMath.accumulate;
+import static complex_classes.ComplexMath.multiplyImag;
+import static complex_classes.ComplexMath.multiplyReal;
 
 /**
- * The SingleQubitGateBuilder constructs the operator matrix for applying single qubit gates. It mutates the GateDirector finalGate field.
+ * The SingleQubitGateBuilder applies single qubit gates directly to the state vector held by the StateTracker.
  *
  * @author Robert Smith
  * @version 0.1
@@ -24,29 +29,182 @@ public class SingleQubitGateBuilder{
     }
 
     /**
-     * Builds the operator matrix for a single-qubit gate.
+     * Applies a single-qubit gate to the state vector in place without building the 2^n x 2^n operator.
+     * <p>
+     * For a target qubit t every basis state i with bit t clear is paired with i | (1 &lt;&lt; t), and the pair is
+     * replaced by the 2x2 operator applied to it:
+     * </p>
+     * [a0'] = [m00 m01] [a0]
+     * [a1']   [m10 m11] [a1]
+     * <p>
+     * One gate touches each amplitude exactly once, so it costs O(2^n) time and no additional state sized memory.
+     * </p>
+     * <p>
+     * The pairs are walked one chunk of the state vector at a time, see {@link StateVector#chunkBits()}. A target
+     * below the chunk keeps each pair inside one chunk, a target at or above it pairs two chunks, and the chunks are
+     * released as soon as they are done. On a heap state the pairs are handed to the SIMD kernels when they are
+     * available, see {@link VectorSupport}.
+     * </p>
      *
      * @param work           The WorkItem containing the gate information.
-     * @param singleOperator The single-qubit operator matrix.
+     * @param singleOperator The 2x2 single-qubit operator matrix.
      */
-    void buildSingleQubitOperator(WorkItem work, ComplexMatrix singleOperator) {
+    void applySingleQubitOperator(WorkItem work, ComplexMatrix singleOperator) {
+        applyToPairs(work, singleOperator, false);
+    }
+
+    /**
+     * Applies a diagonal single-qubit gate, e.g. Z, S, Si, T, Ti, RZ, R1 and R1i, to the state vector in place.
+     * <p>
+     * A diagonal operator only multiplies a0 by m00 and a1 by m11, so each amplitude is scaled by its phase on its
+     * own without reading its partner, and amplitudes that are already 0 are skipped.
+     * </p>
+     *
+     * @param work           The WorkItem containing the gate information.
+     * @param singleOperator The diagonal 2x2 single-qubit operator matrix.
+     * @see GateDirector#isDiagonal(WorkItem, ComplexMatrix)
+     */
+    void applyDiagonalOperator(WorkItem work, ComplexMatrix singleOperator) {
+        applyToPairs(work, singleOperator, true);
+    }
+
+    /**
+     * Applies the X gate to the state vector in place by swapping the amplitudes of each pair, with no arithmetic.
+     *
+     * @param work The WorkItem containing the gate information.
+     * @see PermutationGateBuilder#applyFlip(GateDirector, int[], int[])
+     */
+    void applyBitFlip(WorkItem work) {
+        StateVector state = gateD.tracker.getState();
+        int target = work.getTarget();
+        if (target < 0 || target >= gateD.tracker.getQubitCount()) {
+            throw new IllegalArgumentException("Invalid target qubit.");
+        }
+        long stride = 1L << target;
+        if (state instanceof SparseStateVector) {
+            SparseGateBuilder.permute(gateD.tracker, i -> i ^ stride);
+            return;
+        }
+        PermutationGateBuilder.applyFlip(gateD, new int[0], new int[]{target});
+    }
+
+    /**
+     * Walks the pairs of the target qubit and applies the operator to each, as a full 2x2 or as a diagonal.
+     *
+     * @param work           The WorkItem containing the gate information.
+     * @param singleOperator The 2x2 single-qubit operator matrix.
+     * @param diagonal       true if the operator is diagonal
+     */
+    private void applyToPairs(WorkItem work, ComplexMatrix singleOperator, boolean diagonal) {
+        StateVector state = gateD.tracker.getState();
+        long stateLength = state.size();
+        int target = work.getTarget();
+        if (target < 0 || target >= gateD.tracker.getQubitCount()) {
+            throw new IllegalArgumentException("Invalid target qubit.");
+        }
+        double[] operator = toPrimitiveOperator(singleOperator);
+        if (state instanceof SparseStateVector sparse) {
+            SparseGateBuilder.applyControlledOperator(sparse, 0L, target, operator, diagonal);
+            return;
+        }
+        long stride = 1L << target;
+        long groups = stateLength >> 1;
+        int[] positions = {target};
+        long groupsPerChunk = MultiQubitGateBuilder.groupsPerChunk(state.chunkBits(), target);
 
-        int stateLength = gateD.tracker.getStateVecSize();
-        int numQubits = (int) (Math.log(stateLength) / Math.log(2));
-        ComplexMatrix[] operatorSequence = new ComplexMatrix[numQubits];
-        for (int i = 0; i < numQubits; i++) {
-            if (i != work.getTarget()) {
-                operatorSequence[i] = IDENTITY.getMatrix();
+        gateD.runKernel(groups, groupsPerChunk, (first, last) -> {
+            double[] amplitudes = VectorSupport.vectorizable(state, positions, first, last);
+            if (amplitudes != null) {
+                VectorGateKernels.applyPairs(amplitudes, positions, 0L, stride, operator, diagonal, first, last);
             } else {
-                operatorSequence[i] = singleOperator;
+                for (long group = first; group < last; group++) {
+                    long zeroIdx = MultiQubitGateBuilder.insertZeroBit(group, target);
+                    if (diagonal) {
+                        applyDiagonalPair(state, zeroIdx, zeroIdx | stride, operator);
+                    } else {
+                        applyPair(state, zeroIdx, zeroIdx | stride, operator);
+                    }
+                }
             }
+            MultiQubitGateBuilder.releaseChunks(state, MultiQubitGateBuilder.insertZeroBit(first, target), stride);
+        });
+    }
+
+    /**
+     * Flattens a square operator into interleaved real and imaginary parts in row major order, e.g. a 2x2 becomes
+     * {m00 real, m00 imag, m01 real, m01 imag, m10 real, m10 imag, m11 real, m11 imag}, so the kernels can read it
+     * without touching {@link complex_classes.ComplexNumber} objects.
+     *
+     * @param operator the square operator
+     * @return the operator as 2 * d^2 doubles in row major order
+     * @see ComplexMath#toInterleaved(ComplexMatrix)
+     */
+    static double[] toPrimitiveOperator(ComplexMatrix operator) {
+        return ComplexMath.toInterleaved(operator);
+    }
+
+    /**
+     * Applies a flattened 2x2 operator to the amplitudes of two basis states in place.
+     * <p>
+     * Each row starts from a zero accumulator and rounds in the same order as
+     * {@link complex_classes.ComplexMath#multiplyMatrix(ComplexMatrix, ComplexMatrix)} so results match the operator
+     * matrix path exactly.
+     * </p>
+     *
+     * @param state    the state vector to update
+     * @param zeroIdx  the basis state with the target bit clear
+     * @param oneIdx   the basis state with the target bit set
+     * @param operator the operator from {@link #toPrimitiveOperator(ComplexMatrix)}
+     */
+    static void applyPair(StateVector state, long zeroIdx, long oneIdx, double[] operator) {
+        double zeroReal = state.getReal(zeroIdx);
+        double zeroImag = state.getImag(zeroIdx);
+        double oneReal = state.getReal(oneIdx);
+        double oneImag = state.getImag(oneIdx);
+        for (int row = 0; row < 2; row++) {
+            int m = 4 * row;
+            double real = accumulate(0.0, multiplyReal(operator[m], operator[m + 1], zeroReal, zeroImag), true);
+            double imag = accumulate(0.0, multiplyImag(operator[m], operator[m + 1], zeroReal, zeroImag), true);
+            real = accumulate(real, multiplyReal(operator[m + 2], operator[m + 3], oneReal, oneImag), true);
+            imag = accumulate(imag, multiplyImag(operator[m + 2], operator[m + 3], oneReal, oneImag), true);
+            state.set(row == 0 ? zeroIdx : oneIdx, real, imag);
         }
+    }
+
+    /**
+     * Applies a flattened diagonal 2x2 operator to the amplitudes of two basis states in place, multiplying the first
+     * by m00 and the second by m11. Amplitudes that are 0 are left as they are.
+     * <p>
+     * The off diagonal products of {@link #applyPair(StateVector, long, long, double[])} are signed zeros that leave
+     * the row sums unchanged, so the same rounding of the one remaining product gives the same result.
+     * </p>
+     *
+     * @param state    the state vector to update
+     * @param zeroIdx  the basis state with the target bit clear
+     * @param oneIdx   the basis state with the target bit set
+     * @param operator the diagonal operator from {@link #toPrimitiveOperator(ComplexMatrix)}
+     */
+    static void applyDiagonalPair(StateVector state, long zeroIdx, long oneIdx, double[] operator) {
+        applyPhase(state, zeroIdx, operator[0], operator[1]);
+        applyPhase(state, oneIdx, operator[6], operator[7]);
+    }
 
-        if (numQubits == 1) {
-            gateD.finalGate = singleOperator;
-        } else {
-            gateD.executeOperatorSequence(operatorSequence);
+    /**
+     * Multiplies the amplitude of one basis state by a phase in place, skipping it if it is 0.
+     *
+     * @param state      the state vector to update
+     * @param index      the basis state
+     * @param phaseReal  the real part of the phase
+     * @param phaseImag  the imaginary part of the phase
+     */
+    static void applyPhase(StateVector state, long index, double phaseReal, double phaseImag) {
+        double real = state.getReal(index);
+        double imag = state.getImag(index);
+        if (real == 0.0 && imag == 0.0) {
+            return;
         }
+        state.set(index, accumulate(0.0, multiplyReal(phaseReal, phaseImag, real, imag), true),
+                accumulate(0.0, multiplyImag(phaseReal, phaseImag, real, imag), true));
     }
 
     @Override
@@ -0,0 +1,121 @@
+package measurement;
+
+import complex_classes.ComplexMatrix;
+import state.SparseStateVector;
+import state.StateTracker;
+
+import java.util.Arrays;
+import java.util.function.LongUnaryOperator;
+
+/**
+ * The SparseGateBuilder holds the gate kernels for a {@link SparseStateVector}. Each kernel walks only the basis states
+ * with a stored amplitude, so a gate costs time in proportion to the support of the state rather than 2^n.
+ * <p>
+ * The kernels use the same pair arithmetic as the dense kernels through
+ * {@link SingleQubitGateBuilder#applyPair(state.StateVector, long, long, double[])}, so a sparse state holds the same
+ * amplitudes a dense one would.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class SparseGateBuilder {
+
+    private SparseGateBuilder() {
+    }
+
+    /**
+     * Applies a flattened 2x2 operator to the target qubit of every stored basis state whose control bits are all 1.
+     * A diagonal operator scales each stored amplitude by its phase without pairing.
+     *
+     * @param state       the sparse state vector to update
+     * @param controlMask the control bits, 0 for an uncontrolled gate
+     * @param target      the target qubit
+     * @param operator    the operator from {@link SingleQubitGateBuilder#toPrimitiveOperator}
+     * @param diagonal    true if the operator is diagonal
+     */
+    static void applyControlledOperator(SparseStateVector state, long controlMask, int target, double[] operator,
+                                        boolean diagonal) {
+        long targetMask = 1L << target;
+        if (diagonal) {
+            for (long index : state.storedIndices()) {
+                if ((index & controlMask) == controlMask) {
+                    int m = (index & targetMask) == 0 ? 0 : 6;
+                    SingleQubitGateBuilder.applyPhase(state, index, operator[m], operator[m + 1]);
+                }
+            }
+            return;
+        }
+        long[] pairs = state.storedIndices();
+        int pairCount = 0;
+        for (long index : pairs) {
+            if ((index & controlMask) == controlMask) {
+                pairs[pairCount++] = index & ~targetMask;
+            }
+        }
+        // Both halves of a pair may be stored, sort so each pair is applied once.
+        Arrays.sort(pairs, 0, pairCount);
+        for (int i = 0; i < pairCount; i++) {
+            if (i == 0 || pairs[i] != pairs[i - 1]) {
+                SingleQubitGateBuilder.applyPair(state, pairs[i], pairs[i] | targetMask, operator);
+            }
+        }
+    }
+
+    /**
+     * Applies a 2^k x 2^k operator to the k qubits of every group with a stored basis state.
+     *
+     * @param state    the sparse state vector to update
+     * @param qubits   the k qubits, highest bit of the operator first
+     * @param operator the 2^k x 2^k operator
+     */
+    static void applyOperator(SparseStateVector state, int[] qubits, ComplexMatrix operator) {
+        double[] primitive = SingleQubitGateBuilder.toPrimitiveOperator(operator);
+        long[] offsets = UnitaryGateBuilder.offsets(qubits);
+        long groupMask = offsets[offsets.length - 1];
+        double[] amplitudes = new double[2 * offsets.length + 2];
+        long[] bases = state.storedIndices();
+        for (int i = 0; i < bases.length; i++) {
+            bases[i] &= ~groupMask;
+        }
+        // Several stored basis states may share a base, sort so each group is applied once.
+        Arrays.sort(bases);
+        for (int i = 0; i < bases.length; i++) {
+            if (i == 0 || bases[i] != bases[i - 1]) {
+                UnitaryGateBuilder.applyGroup(state, bases[i], offsets, primitive, amplitudes);
+            }
+        }
+    }
+
+    /**
+     * Negates the amplitude of every stored basis state with all of the mask bits set.
+     *
+     * @param state the sparse state vector to update
+     * @param mask  the bits that must all be 1
+     */
+    static void applyPhaseFlip(SparseStateVector state, long mask) {
+        for (long index : state.storedIndices()) {
+            if ((index & mask) == mask) {
+                state.set(index, -1 * state.getReal(index), -1 * state.getImag(index));
+            }
+        }
+    }
+
+    /**
+     * Moves every stored amplitude to the basis state the permutation maps it to, writing the result into the scratch
+     * state vector of the tracker and swapping it in.
+     *
+     * @param tracker     the tracker holding the sparse state vector
+     * @param permutation maps a basis state to the basis state its amplitude moves to
+     */
+    static void permute(StateTracker tracker, LongUnaryOperator permutation) {
+        SparseStateVector state = (SparseStateVector) tracker.getState();
+        SparseStateVector result = (SparseStateVector) tracker.getScratch();
+        result.clear();
+        for (long index : state.storedIndices()) {
+            result.set(permutation.applyAsLong(index), state.getReal(index), state.getImag(index));
+        }
+        tracker.swapScratch();
+    }
+}
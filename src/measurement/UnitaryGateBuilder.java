@@ -0,0 +1,141 @@
+package measurement;
+
+import complex_classes.ComplexMath;
+import complex_classes.ComplexMatrix;
+import state.StateVector;
+
+import java.util.Arrays;
+
+/**
+ * The UnitaryGateBuilder applies any 2^k x 2^k operator, e.g. ISWAP or a fused block of gates, to k chosen qubits of
+ * the state vector in place, without expanding it to the size of the system.
+ * <p>
+ * The operator acts on the k qubit basis |q0 q1 ... q(k-1)⟩, the first qubit is the high bit of the row and column
+ * index and the last qubit the low bit. Every basis state with all k bits clear is the base of a group of 2^k, and an
+ * offset table built once per gate gives the bits each row of the operator adds to the base. For two qubits a and b
+ * the group is:
+ * </p>
+ * base, base | b, base | a, base | a | b
+ * <p>
+ * The 2^k amplitudes of a group are gathered, multiplied by the operator and scattered back, so one gate touches each
+ * amplitude once, costs O(4^k 2^(n-k)) time and allocates nothing state sized. Gathering into a small buffer keeps the
+ * matrix vector product in cache for k up to {@link #MAX_QUBITS}.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class UnitaryGateBuilder {
+    /**
+     * The largest number of qubits one operator may act on, a 64x64 operator.
+     */
+    static final int MAX_QUBITS = 6;
+
+    private UnitaryGateBuilder() {
+    }
+
+    /**
+     * Applies a 2^k x 2^k operator to the k qubits of every group of the state vector.
+     *
+     * @param gateD    the GateDirector holding the state vector to update
+     * @param qubits   the k qubits, highest bit of the operator first
+     * @param operator the 2^k x 2^k operator
+     */
+    static void applyOperator(GateDirector gateD, int[] qubits, ComplexMatrix operator) {
+        StateVector state = gateD.tracker.getState();
+        int numQubits = gateD.tracker.getQubitCount();
+        validate(numQubits, qubits, operator);
+        double[] primitive = SingleQubitGateBuilder.toPrimitiveOperator(operator);
+        long[] offsets = offsets(qubits);
+        int[] positions = qubits.clone();
+        Arrays.sort(positions);
+        long groups = 1L << (numQubits - positions.length);
+        long groupsPerChunk = MultiQubitGateBuilder.groupsPerChunk(state.chunkBits(), positions);
+
+        gateD.runKernel(groups, groupsPerChunk, (start, last) -> {
+            double[] amplitudes = new double[2 * offsets.length + 2];
+            for (long group = start; group < last; group++) {
+                applyGroup(state, MultiQubitGateBuilder.insertZeroBits(group, positions), offsets, primitive, amplitudes);
+            }
+            MultiQubitGateBuilder.releaseChunks(state, MultiQubitGateBuilder.insertZeroBits(start, positions), offsets);
+        });
+    }
+
+    /**
+     * Checks that the qubits are distinct and in range and that the operator is 2^k x 2^k.
+     *
+     * @param numQubits the number of qubits, not the state vector size.
+     * @param qubits    the k qubits
+     * @param operator  the operator
+     */
+    static void validate(int numQubits, int[] qubits, ComplexMatrix operator) {
+        if (qubits.length < 1 || qubits.length > MAX_QUBITS) {
+            throw new IllegalArgumentException("An operator must act on 1 to " + MAX_QUBITS + " qubits.");
+        }
+        long mask = 0;
+        for (int qubit : qubits) {
+            if (qubit < 0 || qubit >= numQubits || (mask & (1L << qubit)) != 0) {
+                throw new IllegalArgumentException("Invalid target qubit.");
+            }
+            mask |= 1L << qubit;
+        }
+        int dimension = 1 << qubits.length;
+        if (operator.getHeight() != dimension || operator.getWidth() != dimension) {
+            throw new IllegalArgumentException("Operator must be " + dimension + "x" + dimension + " for "
+                    + qubits.length + " qubits.");
+        }
+    }
+
+    /**
+     * Returns the bits each basis state of a group adds to its base, in the row order of the operator.
+     *
+     * @param qubits the k qubits, highest bit of the operator first
+     * @return the 2^k offsets, the last one has every bit set
+     */
+    static long[] offsets(int[] qubits) {
+        int k = qubits.length;
+        long[] offsets = new long[1 << k];
+        for (int row = 0; row < offsets.length; row++) {
+            for (int bit = 0; bit < k; bit++) {
+                if ((row & (1 << bit)) != 0) {
+                    offsets[row] |= 1L << qubits[k - 1 - bit];
+                }
+            }
+        }
+        return offsets;
+    }
+
+    /**
+     * Applies a flattened 2^k x 2^k operator to the amplitudes of one group in place.
+     * <p>
+     * Each row starts from a zero accumulator and rounds in the same order as
+     * {@link complex_classes.ComplexMath#multiplyMatrix(ComplexMatrix, ComplexMatrix)}, the same as
+     * {@link SingleQubitGateBuilder#applyPair(StateVector, long, long, double[])}.
+     * </p>
+     *
+     * @param state      the state vector to update
+     * @param base       the basis state of the group with every bit clear
+     * @param offsets    the offsets from {@link #offsets(int[])}
+     * @param operator   the operator from {@link SingleQubitGateBuilder#toPrimitiveOperator(ComplexMatrix)}
+     * @param amplitudes 2 * 2^k + 2 doubles to gather the group into followed by the row accumulator, reused between
+     *                   the groups of a block
+     */
+    static void applyGroup(StateVector state, long base, long[] offsets, double[] operator, double[] amplitudes) {
+        int dimension = offsets.length;
+        int sum = 2 * dimension;
+        for (int col = 0; col < dimension; col++) {
+            amplitudes[2 * col] = state.getReal(base | offsets[col]);
+            amplitudes[2 * col + 1] = state.getImag(base | offsets[col]);
+        }
+        for (int row = 0; row < dimension; row++) {
+            amplitudes[sum] = 0.0;
+            amplitudes[sum + 1] = 0.0;
+            for (int col = 0; col < dimension; col++) {
+                ComplexMath.multiplyAccumulate(operator, 2 * (dimension * row + col), amplitudes, 2 * col, amplitudes,
+                        sum, true);
+            }
+            state.set(base | offsets[row], amplitudes[sum], amplitudes[sum + 1]);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package measurement;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShuffle;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The VectorGateKernels apply 2x2, diagonal and permutation gates to a heap {@link state.DenseStateVector} with the
+ * Vector API, processing the amplitudes of several consecutive groups per instruction.
+ * <p>
+ * When none of the gate qubits fall among the low bits a vector spans, consecutive groups have consecutive basis
+ * states, so one vector load takes the interleaved real and imaginary parts of several amplitudes of a group and
+ * another the same amplitudes of its partner. A complex product m * a is formed as m.real * a + m.imag * swap(a) with
+ * the sign of m.imag flipped in the real lanes, where swap exchanges the real and imaginary lane of each amplitude.
+ * </p>
+ * <p>
+ * Every product, sum and rounding happens lane by lane in the same order as the scalar kernels, without fused multiply
+ * add, so the amplitudes are the same bit for bit. This class must only be loaded when {@link VectorSupport#isEnabled()}
+ * is true.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class VectorGateKernels {
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+    /**
+     * The number of amplitudes, real and imaginary pairs, one vector holds.
+     */
+    static final int AMPLITUDES_PER_VECTOR = SPECIES.length() / 2;
+    private static final VectorShuffle<Double> SWAP_PARTS = VectorShuffle.fromOp(SPECIES, lane -> lane ^ 1);
+    private static final DoubleVector IMAGINARY_SIGN = DoubleVector.fromArray(SPECIES, alternatingSigns(), 0);
+    private static final DoubleVector ZERO = DoubleVector.zero(SPECIES);
+
+    private VectorGateKernels() {
+    }
+
+    /**
+     * Applies a flattened 2x2 operator to every pair of a block of groups.
+     *
+     * @param amplitudes the interleaved amplitude array of the state
+     * @param positions  the control and target qubits in ascending order
+     * @param setMask    the control bits set in every group
+     * @param targetMask the target bit
+     * @param operator   the operator from {@link SingleQubitGateBuilder#toPrimitiveOperator}
+     * @param diagonal   true if the operator is diagonal
+     * @param first      the first group of the block, a whole number of vectors
+     * @param last       one past the last group of the block, a whole number of vectors
+     */
+    static void applyPairs(double[] amplitudes, int[] positions, long setMask, long targetMask, double[] operator,
+                           boolean diagonal, long first, long last) {
+        DoubleVector[] real = new DoubleVector[4];
+        DoubleVector[] imag = new DoubleVector[4];
+        for (int entry = 0; entry < 4; entry++) {
+            real[entry] = DoubleVector.broadcast(SPECIES, operator[2 * entry]);
+            imag[entry] = DoubleVector.broadcast(SPECIES, operator[2 * entry + 1]).mul(IMAGINARY_SIGN);
+        }
+        for (long group = first; group < last; group += AMPLITUDES_PER_VECTOR) {
+            long zeroIdx = MultiQubitGateBuilder.insertZeroBits(group, positions) | setMask;
+            int zeroOffset = (int) (zeroIdx << 1);
+            int oneOffset = (int) ((zeroIdx | targetMask) << 1);
+            DoubleVector zero = DoubleVector.fromArray(SPECIES, amplitudes, zeroOffset);
+            DoubleVector one = DoubleVector.fromArray(SPECIES, amplitudes, oneOffset);
+            if (diagonal) {
+                phase(zero, real[0], imag[0]).intoArray(amplitudes, zeroOffset);
+                phase(one, real[3], imag[3]).intoArray(amplitudes, oneOffset);
+            } else {
+                DoubleVector zeroSwapped = zero.rearrange(SWAP_PARTS);
+                DoubleVector oneSwapped = one.rearrange(SWAP_PARTS);
+                DoubleVector newZero = clamp(clamp(ZERO.add(product(zero, zeroSwapped, real[0], imag[0])))
+                        .add(product(one, oneSwapped, real[1], imag[1])));
+                DoubleVector newOne = clamp(clamp(ZERO.add(product(zero, zeroSwapped, real[2], imag[2])))
+                        .add(product(one, oneSwapped, real[3], imag[3])));
+                newZero.intoArray(amplitudes, zeroOffset);
+                newOne.intoArray(amplitudes, oneOffset);
+            }
+        }
+    }
+
+    /**
+     * Swaps the amplitudes of base | offsets[2k] and base | offsets[2k + 1] for every base of a block of groups.
+     *
+     * @param amplitudes the interleaved amplitude array of the state
+     * @param positions  the control and target qubits in ascending order
+     * @param setMask    the control bits set in every base
+     * @param offsets    the pairs of target bit patterns to swap
+     * @param first      the first group of the block, a whole number of vectors
+     * @param last       one past the last group of the block, a whole number of vectors
+     */
+    static void swapPairs(double[] amplitudes, int[] positions, long setMask, long[] offsets, long first, long last) {
+        for (long group = first; group < last; group += AMPLITUDES_PER_VECTOR) {
+            long base = MultiQubitGateBuilder.insertZeroBits(group, positions) | setMask;
+            for (int k = 0; k < offsets.length; k += 2) {
+                int firstOffset = (int) ((base | offsets[k]) << 1);
+                int secondOffset = (int) ((base | offsets[k + 1]) << 1);
+                DoubleVector firstValues = DoubleVector.fromArray(SPECIES, amplitudes, firstOffset);
+                DoubleVector.fromArray(SPECIES, amplitudes, secondOffset).intoArray(amplitudes, firstOffset);
+                firstValues.intoArray(amplitudes, secondOffset);
+            }
+        }
+    }
+
+    /**
+     * Returns the clamped complex product of a flattened operator entry and the amplitudes, the same as
+     * testResultForFloatErrorBuildup(m.real * a.real - m.imag * a.imag) and its imaginary counterpart.
+     *
+     * @param values  the amplitudes
+     * @param swapped the amplitudes with the real and imaginary lanes exchanged
+     * @param real    the real part of the entry
+     * @param imag    the imaginary part of the entry, negated in the real lanes
+     * @return the product
+     */
+    private static DoubleVector product(DoubleVector values, DoubleVector swapped, DoubleVector real,
+                                        DoubleVector imag) {
+        return clamp(real.mul(values).add(imag.mul(swapped)));
+    }
+
+    /**
+     * Multiplies the amplitudes by a phase, leaving amplitudes that are 0 as they are, the same as
+     * {@link SingleQubitGateBuilder#applyPhase}.
+     *
+     * @param values the amplitudes
+     * @param real   the real part of the phase
+     * @param imag   the imaginary part of the phase, negated in the real lanes
+     * @return the scaled amplitudes
+     */
+    private static DoubleVector phase(DoubleVector values, DoubleVector real, DoubleVector imag) {
+        DoubleVector swapped = values.rearrange(SWAP_PARTS);
+        VectorMask<Double> isZero = values.compare(VectorOperators.EQ, 0.0).and(swapped.compare(VectorOperators.EQ, 0.0));
+        return clamp(ZERO.add(product(values, swapped, real, imag))).blend(values, isZero);
+    }
+
+    /**
+     * Lane by lane {@link complex_classes.ComplexMath#testResultForFloatErrorBuildup(double)}.
+     *
+     * @param values the values to test
+     * @return the values with those just inside 1.0 or -1.0 snapped to it
+     */
+    private static DoubleVector clamp(DoubleVector values) {
+        VectorMask<Double> belowOne = values.compare(VectorOperators.GT, 0.9999999)
+                .and(values.compare(VectorOperators.LT, 1.0));
+        VectorMask<Double> aboveMinusOne = values.compare(VectorOperators.LT, -0.9999999)
+                .and(values.compare(VectorOperators.GT, -1.0));
+        return values.blend(1.0, belowOne).blend(-1.0, aboveMinusOne);
+    }
+
+    /**
+     * Returns -1 for each real lane and 1 for each imaginary lane of a vector.
+     *
+     * @return the signs
+     */
+    private static double[] alternatingSigns() {
+        double[] signs = new double[SPECIES.length()];
+        for (int lane = 0; lane < signs.length; lane++) {
+            signs[lane] = lane % 2 == 0 ? -1.0 : 1.0;
+        }
+        return signs;
+    }
+}
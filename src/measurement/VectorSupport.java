@@ -0,0 +1,62 @@
+package measurement;
+
+import state.DenseStateVector;
+import state.StateVector;
+
+/**
+ * The VectorSupport decides whether a gate kernel can hand a block of groups to the SIMD kernels in
+ * {@link VectorGateKernels}.
+ * <p>
+ * The SIMD kernels use the incubating jdk.incubator.vector module. They are only used when that module is in the boot
+ * layer, i.e. the program was started with --add-modules jdk.incubator.vector, and the jqs.vector system property is
+ * not false. Otherwise {@link VectorGateKernels} is never loaded and every gate runs on the scalar kernels, which give
+ * the same amplitudes bit for bit.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+final class VectorSupport {
+    private static final boolean ENABLED = !"false".equals(System.getProperty("jqs.vector"))
+            && ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+            && VectorGateKernels.AMPLITUDES_PER_VECTOR > 0;
+
+    private VectorSupport() {
+    }
+
+    /**
+     * Returns true if the SIMD kernels are available.
+     *
+     * @return true if the Vector API module is present and not disabled
+     */
+    static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Returns the dense amplitude array of the state if a block of groups can be applied with the SIMD kernels, or
+     * null if the scalar kernels must be used.
+     * <p>
+     * The SIMD kernels load the amplitudes of several consecutive groups at once, so the state must be a heap
+     * {@link DenseStateVector}, none of the positions may fall among the low bits a vector spans, and the block must
+     * start and end on a whole vector.
+     * </p>
+     *
+     * @param state     the state vector
+     * @param positions the control and target qubits in ascending order
+     * @param first     the first group of the block
+     * @param last      one past the last group of the block
+     * @return the interleaved amplitude array, or null
+     */
+    static double[] vectorizable(StateVector state, int[] positions, long first, long last) {
+        if (!ENABLED || !(state instanceof DenseStateVector dense)) {
+            return null;
+        }
+        long perVector = VectorGateKernels.AMPLITUDES_PER_VECTOR;
+        if ((1L << positions[0]) < perVector || first % perVector != 0 || last % perVector != 0) {
+            return null;
+        }
+        return dense.getAmplitudes();
+    }
+}
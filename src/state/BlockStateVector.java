@@ -0,0 +1,118 @@
+package state;
+
+/**
+ * A {@link StateVector} on the Java heap split into fixed size blocks of interleaved real and imaginary pairs, so the
+ * state is not limited to the 2^31 entries of a single array.
+ * <p>
+ * Block b holds basis states b * blockSize to (b + 1) * blockSize - 1, so the block is selected by the high qubits
+ * and the position within it by the low qubits. The blocks are reported as the chunks of the state vector, see
+ * {@link #chunkBits()}, so the gate kernels keep their work inside one block, or one pair of blocks for gates on the
+ * high qubits. Each block is an ordinary array, which makes blocks a natural unit of work to hand out to threads or to
+ * write to a checkpoint.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public final class BlockStateVector implements StateVector {
+    /**
+     * The largest block, 2^29 amplitudes fills one double[] of interleaved pairs.
+     */
+    public static final long MAX_BLOCK_SIZE = 1L << DenseStateVector.MAX_QUBITS;
+    private final long size;
+    private final int blockBits;
+    private final long blockMask;
+    private final double[][] doubleBlocks;
+    private final float[][] floatBlocks;
+
+    /**
+     * Constructs a zeroed state vector of the given number of basis states.
+     *
+     * @param size      the number of amplitudes, 2^n for n qubits
+     * @param blockSize the number of amplitudes per block, a power of two from 4 to {@link #MAX_BLOCK_SIZE}
+     * @param precision the precision each real and imaginary part is stored in
+     */
+    public BlockStateVector(long size, long blockSize, Precision precision) {
+        if (size < 1) {
+            throw new IllegalArgumentException("State vector must hold at least one amplitude.");
+        }
+        if (blockSize < 4 || blockSize > MAX_BLOCK_SIZE || Long.bitCount(blockSize) != 1) {
+            throw new IllegalArgumentException("Block size must be a power of two from 4 to " + MAX_BLOCK_SIZE + ", "
+                    + blockSize + " requested.");
+        }
+        this.size = size;
+        this.blockBits = Long.numberOfTrailingZeros(Math.min(size, blockSize));
+        this.blockMask = (1L << blockBits) - 1;
+        int blockCount = Math.toIntExact(size >> blockBits);
+        int blockLength = (int) (2L << blockBits);
+        if (precision == Precision.SINGLE) {
+            this.doubleBlocks = null;
+            this.floatBlocks = new float[blockCount][blockLength];
+        } else {
+            this.doubleBlocks = new double[blockCount][blockLength];
+            this.floatBlocks = null;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public double getReal(long index) {
+        int block = (int) (index >>> blockBits);
+        int offset = (int) ((index & blockMask) << 1);
+        return doubleBlocks != null ? doubleBlocks[block][offset] : floatBlocks[block][offset];
+    }
+
+    @Override
+    public double getImag(long index) {
+        int block = (int) (index >>> blockBits);
+        int offset = (int) ((index & blockMask) << 1) + 1;
+        return doubleBlocks != null ? doubleBlocks[block][offset] : floatBlocks[block][offset];
+    }
+
+    @Override
+    public void set(long index, double real, double imag) {
+        int block = (int) (index >>> blockBits);
+        int offset = (int) ((index & blockMask) << 1);
+        if (doubleBlocks != null) {
+            doubleBlocks[block][offset] = real;
+            doubleBlocks[block][offset + 1] = imag;
+        } else {
+            floatBlocks[block][offset] = (float) real;
+            floatBlocks[block][offset + 1] = (float) imag;
+        }
+    }
+
+    @Override
+    public Precision precision() {
+        return doubleBlocks != null ? Precision.DOUBLE : Precision.SINGLE;
+    }
+
+    @Override
+    public int chunkBits() {
+        return blockBits;
+    }
+
+    @Override
+    public StateVector newEmpty() {
+        return new BlockStateVector(size, 1L << blockBits, precision());
+    }
+
+    @Override
+    public void copyFrom(StateVector other) {
+        if (other instanceof BlockStateVector blocks && blocks.size == size && blocks.blockBits == blockBits
+                && blocks.precision() == precision()) {
+            Object[] from = doubleBlocks != null ? blocks.doubleBlocks : blocks.floatBlocks;
+            Object[] to = doubleBlocks != null ? doubleBlocks : floatBlocks;
+            for (int b = 0; b < to.length; b++) {
+                System.arraycopy(from[b], 0, to[b], 0, (int) (2L << blockBits));
+            }
+        } else {
+            StateVector.super.copyFrom(other);
+        }
+    }
+}
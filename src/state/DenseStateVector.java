@@ -0,0 +1,88 @@
+package state;
+
+/**
+ * A {@link StateVector} backed by a flat primitive double[] of interleaved real and imaginary pairs, the real part of
+ * basis state i is at index 2i and the imaginary part at index 2i + 1. This is the default storage, it holds up to
+ * 2^29 amplitudes because a Java array cannot hold more than 2^31 elements.
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public final class DenseStateVector implements StateVector {
+    /**
+     * The largest number of qubits a single interleaved double[] can hold.
+     */
+    public static final int MAX_QUBITS = 29;
+    private final double[] amplitudes;
+
+    /**
+     * Constructs a zeroed state vector of the given number of basis states.
+     *
+     * @param size the number of amplitudes, 2^n for n qubits
+     */
+    public DenseStateVector(long size) {
+        if (size < 1 || size > (1L << MAX_QUBITS)) {
+            throw new IllegalArgumentException("Heap state vector supports 1 to 2^" + MAX_QUBITS + " amplitudes, "
+                    + size + " requested.");
+        }
+        this.amplitudes = new double[(int) (2 * size)];
+    }
+
+    /**
+     * Constructs a state vector that wraps an existing array of interleaved real and imaginary pairs without copying.
+     *
+     * @param amplitudes the interleaved amplitude array
+     */
+    public DenseStateVector(double[] amplitudes) {
+        if (amplitudes.length < 2 || amplitudes.length % 2 != 0) {
+            throw new IllegalArgumentException("Amplitude array must hold real and imaginary pairs.");
+        }
+        this.amplitudes = amplitudes;
+    }
+
+    /**
+     * Returns the live backing array of interleaved real and imaginary pairs.
+     *
+     * @return the amplitude array
+     */
+    public double[] getAmplitudes() {
+        return amplitudes;
+    }
+
+    @Override
+    public long size() {
+        return amplitudes.length >> 1;
+    }
+
+    @Override
+    public double getReal(long index) {
+        return amplitudes[(int) (index << 1)];
+    }
+
+    @Override
+    public double getImag(long index) {
+        return amplitudes[(int) (index << 1) + 1];
+    }
+
+    @Override
+    public void set(long index, double real, double imag) {
+        int idx = (int) (index << 1);
+        amplitudes[idx] = real;
+        amplitudes[idx + 1] = imag;
+    }
+
+    @Override
+    public StateVector newEmpty() {
+        return new DenseStateVector(size());
+    }
+
+    @Override
+    public void copyFrom(StateVector other) {
+        if (other instanceof DenseStateVector dense && dense.amplitudes.length == amplitudes.length) {
+            System.arraycopy(dense.amplitudes, 0, amplitudes, 0, amplitudes.length);
+        } else {
+            StateVector.super.copyFrom(other);
+        }
+    }
+}
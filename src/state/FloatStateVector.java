@@ -0,0 +1,77 @@
+package state;
+
+/**
+ * A {@link StateVector} backed by a flat primitive float[] of interleaved real and imaginary pairs, the single
+ * precision counterpart of {@link DenseStateVector}. Amplitudes are read as doubles by the kernels and rounded to float
+ * when they are stored, which halves the memory and bandwidth of the state vector.
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public final class FloatStateVector implements StateVector {
+    private final float[] amplitudes;
+
+    /**
+     * Constructs a zeroed state vector of the given number of basis states.
+     *
+     * @param size the number of amplitudes, 2^n for n qubits
+     */
+    public FloatStateVector(long size) {
+        if (size < 1 || size > (1L << DenseStateVector.MAX_QUBITS)) {
+            throw new IllegalArgumentException("Heap state vector supports 1 to 2^" + DenseStateVector.MAX_QUBITS
+                    + " amplitudes, " + size + " requested.");
+        }
+        this.amplitudes = new float[(int) (2 * size)];
+    }
+
+    /**
+     * Returns the live backing array of interleaved real and imaginary pairs.
+     *
+     * @return the amplitude array
+     */
+    public float[] getAmplitudes() {
+        return amplitudes;
+    }
+
+    @Override
+    public long size() {
+        return amplitudes.length >> 1;
+    }
+
+    @Override
+    public double getReal(long index) {
+        return amplitudes[(int) (index << 1)];
+    }
+
+    @Override
+    public double getImag(long index) {
+        return amplitudes[(int) (index << 1) + 1];
+    }
+
+    @Override
+    public void set(long index, double real, double imag) {
+        int idx = (int) (index << 1);
+        amplitudes[idx] = (float) real;
+        amplitudes[idx + 1] = (float) imag;
+    }
+
+    @Override
+    public StateVector newEmpty() {
+        return new FloatStateVector(size());
+    }
+
+    @Override
+    public void copyFrom(StateVector other) {
+        if (other instanceof FloatStateVector single && single.amplitudes.length == amplitudes.length) {
+            System.arraycopy(single.amplitudes, 0, amplitudes, 0, amplitudes.length);
+        } else {
+            StateVector.super.copyFrom(other);
+        }
+    }
+
+    @Override
+    public Precision precision() {
+        return Precision.SINGLE;
+    }
+}
@@ -0,0 +1,189 @@
+package state;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The gates a {@link WorkItem} can name, each with the properties the gate builders dispatch on, so they look the
+ * properties up instead of parsing operator strings or inspecting matrices.
+ * <p>
+ * A controlled gate names the gate it applies to its targets, see {@link #getTarget()}, e.g. X for CX, CXX and TOFFOLI
+ * and SWAP for CSWAP. A single qubit gate given to CGate, CCGate or XCGate is applied to every target while all
+ * controls are 1, whatever its number of controls.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public enum GateOpcode {
+    X("X", 0, 1, null, Property.PERMUTATION),
+    Y("Y", 0, 1, null, 0),
+    Z("Z", 0, 1, null, Property.DIAGONAL),
+    H("H", 0, 1, null, 0),
+    S("S", 0, 1, null, Property.DIAGONAL),
+    SI("Si", 0, 1, null, Property.DIAGONAL),
+    T("T", 0, 1, null, Property.DIAGONAL),
+    TI("Ti", 0, 1, null, Property.DIAGONAL),
+    RX("RX", 0, 1, null, 0),
+    RY("RY", 0, 1, null, 0),
+    RZ("RZ", 0, 1, null, Property.DIAGONAL),
+    R1("R1", 0, 1, null, Property.DIAGONAL),
+    R1I("R1i", 0, 1, null, Property.DIAGONAL),
+    ID("ID", 0, 1, null, Property.DIAGONAL | Property.PERMUTATION),
+
+    CX("CX", 1, 1, X, Property.PERMUTATION),
+    CY("CY", 1, 1, Y, 0),
+    CZ("CZ", 1, 1, Z, Property.DIAGONAL),
+    CH("CH", 1, 1, H, 0),
+    CS("CS", 1, 1, S, Property.DIAGONAL),
+    CSI("CSi", 1, 1, SI, Property.DIAGONAL),
+    CT("CT", 1, 1, T, Property.DIAGONAL),
+    CTI("CTi", 1, 1, TI, Property.DIAGONAL),
+    CRX("CRX", 1, 1, RX, 0),
+    CRY("CRY", 1, 1, RY, 0),
+    CRZ("CRZ", 1, 1, RZ, Property.DIAGONAL),
+    CR1("CR1", 1, 1, R1, Property.DIAGONAL),
+    CR1I("CR1i", 1, 1, R1I, Property.DIAGONAL),
+
+    SWAP("SWAP", 0, 2, null, Property.PERMUTATION),
+    ISWAP("ISWAP", 0, 2, null, 0),
+    CSWAP("CSWAP", 1, 2, SWAP, Property.PERMUTATION),
+    CXX("CXX", 1, 2, X, Property.PERMUTATION),
+    TOFFOLI("TOFFOLI", 2, 1, X, Property.PERMUTATION),
+
+    /**
+     * A work item that carries its operator matrix, see {@link WorkItem#getMatrix()}, on as many qubits as the matrix.
+     */
+    UNITARY(WorkItem.UNITARY, 0, 0, null, 0);
+
+    private static final Map<String, GateOpcode> BY_SYMBOL = new HashMap<>();
+    private static final Map<GateOpcode, GateOpcode> CONTROLLED = new HashMap<>();
+
+    static {
+        for (GateOpcode opcode : values()) {
+            BY_SYMBOL.put(opcode.symbol, opcode);
+            if (opcode.controls == 1 && opcode.targets == 1) {
+                CONTROLLED.put(opcode.target, opcode);
+            }
+        }
+    }
+
+    private final String symbol;
+    private final int controls;
+    private final int targets;
+    private final GateOpcode target;
+    private final int properties;
+
+    GateOpcode(String symbol, int controls, int targets, GateOpcode target, int properties) {
+        this.symbol = symbol;
+        this.controls = controls;
+        this.targets = targets;
+        this.target = target == null ? this : target;
+        this.properties = properties;
+    }
+
+    /**
+     * Returns the opcode a {@link WorkItem} operator string names.
+     *
+     * @param symbol the operator string, e.g. "CR1i"
+     * @return the opcode, or null if the string names no gate
+     */
+    public static GateOpcode of(String symbol) {
+        return symbol == null ? null : BY_SYMBOL.get(symbol);
+    }
+
+    /**
+     * Returns the operator string of the gate with one control added, e.g. "CS" for "S", as CGate names it. A string
+     * that names no single qubit gate gets "C" prepended, so the gate builders report it as an unknown gate.
+     *
+     * @param gate the operator string of the single qubit gate
+     * @return the operator string of the controlled gate
+     */
+    public static String controlledSymbol(String gate) {
+        GateOpcode opcode = of(gate);
+        GateOpcode controlled = opcode == null ? null : opcode.getControlled();
+        return controlled == null ? "C" + gate : controlled.symbol;
+    }
+
+    /**
+     * Returns the operator string of the gate, the one {@link WorkItem#getOperator()} returns.
+     *
+     * @return the operator string
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * Returns the number of qubits the gate acts on, its controls and targets. CGate, CCGate and XCGate add controls
+     * and targets to a single qubit gate beyond this.
+     *
+     * @return the number of qubits, 0 for {@link #UNITARY}
+     */
+    public int getQubits() {
+        return controls + targets;
+    }
+
+    /**
+     * Returns the number of controls of the gate.
+     *
+     * @return the number of controls
+     */
+    public int getControls() {
+        return controls;
+    }
+
+    /**
+     * Returns true if the gate applies another gate to its targets while its controls are 1.
+     *
+     * @return true for a controlled gate
+     */
+    public boolean isControlled() {
+        return controls > 0;
+    }
+
+    /**
+     * Returns the gate applied to the targets, the opcode itself for a gate without controls.
+     *
+     * @return the target gate
+     */
+    public GateOpcode getTarget() {
+        return target;
+    }
+
+    /**
+     * Returns the gate with one control added, e.g. CS for S.
+     *
+     * @return the controlled gate, or null if the opcode has none
+     */
+    public GateOpcode getControlled() {
+        return CONTROLLED.get(this);
+    }
+
+    /**
+     * Returns true if the operator of the gate is diagonal, so it only multiplies each amplitude by a phase.
+     *
+     * @return true for a diagonal gate
+     */
+    public boolean isDiagonal() {
+        return (properties & Property.DIAGONAL) != 0;
+    }
+
+    /**
+     * Returns true if the gate only moves amplitudes, without multiplying any of them.
+     *
+     * @return true for a permutation gate
+     */
+    public boolean isPermutation() {
+        return (properties & Property.PERMUTATION) != 0;
+    }
+
+    /**
+     * The bits of the properties of an opcode.
+     */
+    private static final class Property {
+        private static final int DIAGONAL = 1;
+        private static final int PERMUTATION = 2;
+    }
+}
@@ -0,0 +1,189 @@
+package state;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_FLOAT;
+import static java.nio.file.StandardOpenOption.DELETE_ON_CLOSE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * A {@link StateVector} kept in a scratch file and mapped into memory in fixed size chunks, for circuits whose state
+ * vector is larger than RAM.
+ * <p>
+ * The amplitudes are laid out as interleaved real and imaginary pairs, the same as {@link OffHeapStateVector}, and
+ * chunk c holds basis states c * chunkSize to (c + 1) * chunkSize - 1. The gate kernels work through the state one
+ * chunk at a time, or one pair of chunks for gates on qubits above the chunk, and call {@link #releaseChunk(long)}
+ * when they are done with it so the operating system can write it back and evict it before the next chunk is paged
+ * in. The scratch file starts sparse, so the zero amplitudes of a new state take no disk space until written.
+ * </p>
+ * <p>
+ * The file is deleted when the state vector is closed. This uses the Foreign Function and Memory API, run with
+ * --enable-preview on JDK 21.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public final class MappedStateVector implements StateVector {
+    private final Path directory;
+    private final Path file;
+    private final FileChannel channel;
+    private final Arena arena;
+    private final MemorySegment[] chunks;
+    private final long size;
+    private final int chunkBits;
+    private final long chunkMask;
+    private final boolean singlePrecision;
+    private boolean closed;
+
+    /**
+     * Creates a zeroed state vector in a new scratch file.
+     *
+     * @param size      the number of amplitudes, 2^n for n qubits
+     * @param directory the directory the scratch file is created in
+     * @param chunkSize the number of amplitudes mapped together, a power of two of at least 4
+     * @param precision the precision each real and imaginary part is stored in
+     */
+    public MappedStateVector(long size, Path directory, long chunkSize, Precision precision) {
+        if (size < 1) {
+            throw new IllegalArgumentException("State vector must hold at least one amplitude.");
+        }
+        if (chunkSize < 4 || Long.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two of at least 4, " + chunkSize
+                    + " requested.");
+        }
+        this.size = size;
+        this.directory = directory;
+        this.singlePrecision = precision == Precision.SINGLE;
+        this.chunkBits = Long.numberOfTrailingZeros(Math.min(size, chunkSize));
+        this.chunkMask = (1L << chunkBits) - 1;
+        long amplitudeBytes = 2L * (singlePrecision ? Float.BYTES : Double.BYTES);
+        long chunkBytes = Math.multiplyExact(1L << chunkBits, amplitudeBytes);
+        int chunkCount = Math.toIntExact(size >> chunkBits);
+        try {
+            this.file = Files.createTempFile(directory, "jqsim-state-", ".amp");
+            this.channel = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the state vector scratch file in " + directory, e);
+        }
+        this.arena = Arena.ofShared();
+        this.chunks = new MemorySegment[chunkCount];
+        try {
+            // Writing the last byte sizes the file without filling it, the unwritten blocks read as 0.
+            channel.write(ByteBuffer.allocate(1), Math.multiplyExact(chunkBytes, (long) chunkCount) - 1);
+            for (int c = 0; c < chunkCount; c++) {
+                chunks[c] = channel.map(FileChannel.MapMode.READ_WRITE, c * chunkBytes, chunkBytes, arena);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            if (e instanceof IOException io) {
+                throw new UncheckedIOException("Could not map the state vector scratch file " + file, io);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public double getReal(long index) {
+        MemorySegment chunk = chunks[(int) (index >>> chunkBits)];
+        long offset = (index & chunkMask) << 1;
+        if (singlePrecision) {
+            return chunk.getAtIndex(JAVA_FLOAT, offset);
+        }
+        return chunk.getAtIndex(JAVA_DOUBLE, offset);
+    }
+
+    @Override
+    public double getImag(long index) {
+        MemorySegment chunk = chunks[(int) (index >>> chunkBits)];
+        long offset = ((index & chunkMask) << 1) + 1;
+        if (singlePrecision) {
+            return chunk.getAtIndex(JAVA_FLOAT, offset);
+        }
+        return chunk.getAtIndex(JAVA_DOUBLE, offset);
+    }
+
+    @Override
+    public void set(long index, double real, double imag) {
+        MemorySegment chunk = chunks[(int) (index >>> chunkBits)];
+        long offset = (index & chunkMask) << 1;
+        if (singlePrecision) {
+            chunk.setAtIndex(JAVA_FLOAT, offset, (float) real);
+            chunk.setAtIndex(JAVA_FLOAT, offset + 1, (float) imag);
+        } else {
+            chunk.setAtIndex(JAVA_DOUBLE, offset, real);
+            chunk.setAtIndex(JAVA_DOUBLE, offset + 1, imag);
+        }
+    }
+
+    @Override
+    public Precision precision() {
+        return singlePrecision ? Precision.SINGLE : Precision.DOUBLE;
+    }
+
+    @Override
+    public int chunkBits() {
+        return chunkBits;
+    }
+
+    /**
+     * Drops the chunk from this process's resident memory. Its pages stay in the file, and in the page cache until the
+     * operating system needs the memory, so the next access pages them back in.
+     *
+     * @param chunk the index of the chunk
+     */
+    @Override
+    public void releaseChunk(long chunk) {
+        chunks[(int) chunk].unload();
+    }
+
+    @Override
+    public StateVector newEmpty() {
+        return new MappedStateVector(size, directory, 1L << chunkBits, precision());
+    }
+
+    @Override
+    public void copyFrom(StateVector other) {
+        if (other instanceof MappedStateVector mapped && mapped.size == size && mapped.chunkBits == chunkBits
+                && mapped.singlePrecision == singlePrecision) {
+            for (int c = 0; c < chunks.length; c++) {
+                MemorySegment.copy(mapped.chunks[c], 0, chunks[c], 0, chunks[c].byteSize());
+                mapped.releaseChunk(c);
+                releaseChunk(c);
+            }
+        } else {
+            StateVector.super.copyFrom(other);
+        }
+    }
+
+    /**
+     * Unmaps the chunks and deletes the scratch file. Calling close more than once has no further effect.
+     */
+    @Override
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            arena.close();
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not delete the state vector scratch file " + file, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package state;
+
+/**
+ * The floating point precision the amplitudes of a state vector are stored in.
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public enum Precision {
+    /**
+     * complex128, each amplitude is a pair of 64 bit doubles.
+     */
+    DOUBLE(0.0),
+
+    /**
+     * complex64, each amplitude is a pair of 32 bit floats. Halves the memory and bandwidth of the state vector at
+     * the cost of about 7 significant digits.
+     */
+    SINGLE(1e-6);
+
+    private final double displayTolerance;
+
+    Precision(double displayTolerance) {
+        this.displayTolerance = displayTolerance;
+    }
+
+    /**
+     * Returns the size below which an amplitude component is rounding noise of this precision and is printed as 0.
+     *
+     * @return the display tolerance, 0.0 when every component is printed as computed
+     */
+    public double getDisplayTolerance() {
+        return displayTolerance;
+    }
+}
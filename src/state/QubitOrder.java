@@ -0,0 +1,22 @@
+package state;
+
+/**
+ * A relabeling of the qubits of a {@link StateTracker} state vector that has not been undone yet, the amplitudes are
+ * stored with some logical qubits held by the bit of another index.
+ * <p>
+ * Gate kernels work on the relabeled state vector directly. Everything that reads or writes amplitudes by basis state
+ * index through the tracker first calls {@link StateTracker#restoreQubitOrder()}, which calls {@link #restore()} once,
+ * so results are always seen in logical order.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public interface QubitOrder {
+
+    /**
+     * Moves the amplitudes of the state vector so every logical qubit is held by the bit of the same index again.
+     */
+    void restore();
+}
@@ -0,0 +1,229 @@
+package state;
+
+import java.util.Arrays;
+
+/**
+ * A {@link StateVector} that stores only the basis states with a nonzero amplitude, for circuits such as GHZ states,
+ * basis encodings and reversible arithmetic whose support stays far smaller than 2^n.
+ * <p>
+ * The stored basis states are kept in an open addressing hash table with linear probing: a long[] of basis state
+ * indices and a double[] of interleaved real and imaginary pairs, so nothing is boxed and reads, writes and removals
+ * are amortized O(1). Setting an amplitude to exactly 0 removes it from the table. Only exact zeros are dropped, so the
+ * sparse gate kernels produce the same amplitudes as the dense ones.
+ * </p>
+ * <p>
+ * Memory scales with the number of nonzero amplitudes rather than the number of qubits, which allows up to 62 qubits.
+ * Amplitudes are always stored in double precision.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public final class SparseStateVector implements StateVector {
+    private static final long EMPTY = -1L;
+    private static final int MIN_CAPACITY = 16;
+    private static final long GOLDEN_RATIO = 0x9E3779B97F4A7C15L;
+    private final long size;
+    private long[] keys;
+    private double[] values;
+    private int count;
+    private int shift;
+
+    /**
+     * Constructs a state vector of the given number of basis states with every amplitude 0.
+     *
+     * @param size the number of amplitudes, 2^n for n qubits
+     */
+    public SparseStateVector(long size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("State vector must hold at least one amplitude.");
+        }
+        this.size = size;
+        allocateTable(MIN_CAPACITY);
+    }
+
+    /**
+     * Returns the number of basis states with a stored, nonzero amplitude.
+     *
+     * @return the number of stored amplitudes
+     */
+    public int nonZeroCount() {
+        return count;
+    }
+
+    /**
+     * Returns the basis states with a stored amplitude, in no particular order. The array is a copy, so the state can
+     * be changed while it is walked.
+     *
+     * @return a new array of the stored basis states
+     */
+    public long[] storedIndices() {
+        long[] result = new long[count];
+        int next = 0;
+        for (long key : keys) {
+            if (key != EMPTY) {
+                result[next++] = key;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Sets every amplitude to 0, keeping the capacity of the table.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        count = 0;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public double getReal(long index) {
+        int slot = find(index);
+        return keys[slot] == EMPTY ? 0.0 : values[slot << 1];
+    }
+
+    @Override
+    public double getImag(long index) {
+        int slot = find(index);
+        return keys[slot] == EMPTY ? 0.0 : values[(slot << 1) + 1];
+    }
+
+    @Override
+    public void set(long index, double real, double imag) {
+        int slot = find(index);
+        if (real == 0.0 && imag == 0.0) {
+            if (keys[slot] != EMPTY) {
+                remove(slot);
+            }
+            return;
+        }
+        if (keys[slot] == EMPTY) {
+            if (index < 0 || index >= size) {
+                throw new IndexOutOfBoundsException("Basis state " + index + " out of range for " + size);
+            }
+            if (count + 1 > keys.length >> 1) {
+                grow();
+                slot = find(index);
+            }
+            keys[slot] = index;
+            count++;
+        }
+        values[slot << 1] = real;
+        values[(slot << 1) + 1] = imag;
+    }
+
+    @Override
+    public StateVector newEmpty() {
+        return new SparseStateVector(size);
+    }
+
+    @Override
+    public void copyFrom(StateVector other) {
+        if (other.size() != size) {
+            throw new IllegalArgumentException("State vector sizes do not match: " + size + " and " + other.size());
+        }
+        if (other instanceof SparseStateVector sparse) {
+            keys = Arrays.copyOf(sparse.keys, sparse.keys.length);
+            values = Arrays.copyOf(sparse.values, sparse.values.length);
+            count = sparse.count;
+            shift = sparse.shift;
+        } else {
+            allocateTable(MIN_CAPACITY);
+            for (long i = 0; i < size; i++) {
+                set(i, other.getReal(i), other.getImag(i));
+            }
+        }
+    }
+
+    /**
+     * Returns the slot holding the basis state, or the empty slot it would be inserted at.
+     *
+     * @param index the basis state
+     * @return the slot in the table
+     */
+    private int find(long index) {
+        int mask = keys.length - 1;
+        int slot = home(index);
+        while (keys[slot] != EMPTY && keys[slot] != index) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Returns the first slot the basis state is probed at.
+     *
+     * @param index the basis state
+     * @return the home slot
+     */
+    private int home(long index) {
+        return (int) ((index * GOLDEN_RATIO) >>> shift);
+    }
+
+    /**
+     * Empties a slot, moving later entries of the same probe run back so every entry stays reachable from its home
+     * slot without tombstones.
+     *
+     * @param slot the occupied slot to empty
+     */
+    private void remove(int slot) {
+        int mask = keys.length - 1;
+        int hole = slot;
+        int next = slot;
+        while (true) {
+            next = (next + 1) & mask;
+            long key = keys[next];
+            if (key == EMPTY) {
+                break;
+            }
+            int home = home(key);
+            // Move the entry back unless its home lies cyclically after the hole, up to its current slot.
+            boolean reachable = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!reachable) {
+                keys[hole] = key;
+                values[hole << 1] = values[next << 1];
+                values[(hole << 1) + 1] = values[(next << 1) + 1];
+                hole = next;
+            }
+        }
+        keys[hole] = EMPTY;
+        count--;
+    }
+
+    /**
+     * Doubles the table and reinserts every stored amplitude.
+     */
+    private void grow() {
+        long[] oldKeys = keys;
+        double[] oldValues = values;
+        allocateTable(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                int slot = find(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot << 1] = oldValues[i << 1];
+                values[(slot << 1) + 1] = oldValues[(i << 1) + 1];
+                count++;
+            }
+        }
+    }
+
+    /**
+     * Replaces the table with an empty one of the given capacity.
+     *
+     * @param capacity the number of slots, a power of two
+     */
+    private void allocateTable(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        values = new double[capacity << 1];
+        count = 0;
+        shift = 64 - Integer.numberOfTrailingZeros(capacity);
+    }
+}
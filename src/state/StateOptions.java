@@ -0,0 +1,315 @@
+package state;
+
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Options that control how a {@link StateTracker} stores the state vector and how gates on it are scheduled. The
+ * defaults keep the state on the Java heap in double precision.
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public class StateOptions {
+    private StorageMode storageMode = StorageMode.HEAP;
+    private boolean hugePages = false;
+    private Precision precision = Precision.DOUBLE;
+    private Path mappedDirectory = Path.of(System.getProperty("java.io.tmpdir"));
+    private long mappedChunkSize = 1L << 22;
+    private long heapBlockSize = 1L << 24;
+    private double sparseToDenseThreshold = 1.0 / 16;
+    private double denseToSparseThreshold = 1.0 / 64;
+    private ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+    private int parallelThreshold = 18;
+    private int cacheBlockQubits = 14;
+    private boolean gateFusion = false;
+    private int fusionQubits = 1;
+
+    /**
+     * Gets where the state vector is stored.
+     *
+     * @return the storage mode
+     */
+    public StorageMode getStorageMode() {
+        return storageMode;
+    }
+
+    /**
+     * Sets where the state vector is stored.
+     *
+     * @param storageMode the storage mode
+     */
+    public void setStorageMode(StorageMode storageMode) {
+        this.storageMode = storageMode;
+    }
+
+    /**
+     * Gets whether off heap storage is aligned and advised for huge pages.
+     *
+     * @return true if huge pages are requested
+     */
+    public boolean isHugePages() {
+        return hugePages;
+    }
+
+    /**
+     * Sets whether off heap storage is aligned and advised for huge pages. Ignored for heap storage.
+     *
+     * @param hugePages true to request huge pages
+     */
+    public void setHugePages(boolean hugePages) {
+        this.hugePages = hugePages;
+    }
+
+    /**
+     * Gets the precision the amplitudes are stored in.
+     *
+     * @return the precision
+     */
+    public Precision getPrecision() {
+        return precision;
+    }
+
+    /**
+     * Sets the precision the amplitudes are stored in, {@link Precision#SINGLE} halves the memory of the state vector.
+     *
+     * @param precision the precision
+     */
+    public void setPrecision(Precision precision) {
+        this.precision = precision;
+    }
+
+    /**
+     * Gets the directory {@link StorageMode#MAPPED} state vectors create their scratch files in.
+     *
+     * @return the scratch directory, the system temp directory by default
+     */
+    public Path getMappedDirectory() {
+        return mappedDirectory;
+    }
+
+    /**
+     * Sets the directory {@link StorageMode#MAPPED} state vectors create their scratch files in. Use a local disk with
+     * room for 16 bytes per amplitude, 8 in single precision.
+     *
+     * @param mappedDirectory the scratch directory
+     */
+    public void setMappedDirectory(Path mappedDirectory) {
+        this.mappedDirectory = mappedDirectory;
+    }
+
+    /**
+     * Gets the number of amplitudes {@link StorageMode#MAPPED} state vectors map and process together.
+     *
+     * @return the chunk size in amplitudes, 2^22 by default
+     */
+    public long getMappedChunkSize() {
+        return mappedChunkSize;
+    }
+
+    /**
+     * Sets the number of amplitudes {@link StorageMode#MAPPED} state vectors map and process together. Two chunks must
+     * fit in RAM at once.
+     *
+     * @param mappedChunkSize the chunk size in amplitudes, a power of two of at least 4
+     * @throws IllegalArgumentException if the chunk size is not a power of two of at least 4
+     */
+    public void setMappedChunkSize(long mappedChunkSize) {
+        if (mappedChunkSize < 4 || Long.bitCount(mappedChunkSize) != 1) {
+            throw new IllegalArgumentException("Chunk size must be a power of two of at least 4, " + mappedChunkSize
+                    + " requested.");
+        }
+        this.mappedChunkSize = mappedChunkSize;
+    }
+
+    /**
+     * Gets the number of amplitudes in each block of a {@link StorageMode#BLOCKED} state vector.
+     *
+     * @return the block size in amplitudes, 2^24 by default
+     */
+    public long getHeapBlockSize() {
+        return heapBlockSize;
+    }
+
+    /**
+     * Sets the number of amplitudes in each block of a {@link StorageMode#BLOCKED} state vector.
+     *
+     * @param heapBlockSize the block size in amplitudes, a power of two from 4 to 2^29
+     * @throws IllegalArgumentException if the block size is not a power of two from 4 to 2^29
+     */
+    public void setHeapBlockSize(long heapBlockSize) {
+        if (heapBlockSize < 4 || heapBlockSize > BlockStateVector.MAX_BLOCK_SIZE || Long.bitCount(heapBlockSize) != 1) {
+            throw new IllegalArgumentException("Block size must be a power of two from 4 to "
+                    + BlockStateVector.MAX_BLOCK_SIZE + ", " + heapBlockSize + " requested.");
+        }
+        this.heapBlockSize = heapBlockSize;
+    }
+
+    /**
+     * Gets the fraction of nonzero amplitudes above which an {@link StorageMode#ADAPTIVE} state switches to dense.
+     *
+     * @return the fraction of 2^n, 1/16 by default
+     */
+    public double getSparseToDenseThreshold() {
+        return sparseToDenseThreshold;
+    }
+
+    /**
+     * Sets the fraction of nonzero amplitudes above which an {@link StorageMode#ADAPTIVE} state switches from sparse to
+     * dense storage. Keep it above the dense to sparse threshold so a state does not switch back and forth.
+     *
+     * @param sparseToDenseThreshold the fraction of 2^n
+     */
+    public void setSparseToDenseThreshold(double sparseToDenseThreshold) {
+        this.sparseToDenseThreshold = sparseToDenseThreshold;
+    }
+
+    /**
+     * Gets the fraction of nonzero amplitudes below which an {@link StorageMode#ADAPTIVE} state switches to sparse.
+     *
+     * @return the fraction of 2^n, 1/64 by default
+     */
+    public double getDenseToSparseThreshold() {
+        return denseToSparseThreshold;
+    }
+
+    /**
+     * Sets the fraction of nonzero amplitudes below which an {@link StorageMode#ADAPTIVE} state switches from dense to
+     * sparse storage.
+     *
+     * @param denseToSparseThreshold the fraction of 2^n
+     */
+    public void setDenseToSparseThreshold(double denseToSparseThreshold) {
+        this.denseToSparseThreshold = denseToSparseThreshold;
+    }
+
+    /**
+     * Gets the pool dense gate kernels split their work across.
+     *
+     * @return the pool, the common pool by default
+     */
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    /**
+     * Sets the pool dense gate kernels split their work across. A pool with a parallelism of 1 keeps every gate on the
+     * calling thread.
+     *
+     * @param parallelPool the pool
+     */
+    public void setParallelPool(ForkJoinPool parallelPool) {
+        this.parallelPool = parallelPool;
+    }
+
+    /**
+     * Gets the number of qubits from which dense gate kernels run in parallel.
+     *
+     * @return the number of qubits, 18 by default
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Sets the number of qubits from which dense gate kernels run in parallel, smaller states run on the calling thread.
+     * The amplitudes are the same either way.
+     *
+     * @param parallelThreshold the number of qubits
+     */
+    public void setParallelThreshold(int parallelThreshold) {
+        this.parallelThreshold = parallelThreshold;
+    }
+
+    /**
+     * Gets the number of low qubits whose amplitudes form one cache block for runs of gates.
+     *
+     * @return the number of qubits, 14 by default
+     */
+    public int getCacheBlockQubits() {
+        return cacheBlockQubits;
+    }
+
+    /**
+     * Sets the number of low qubits whose amplitudes form one cache block. A run of queued gates that only act on
+     * qubits below this is applied to one block of 2^cacheBlockQubits amplitudes at a time, so the run makes one pass
+     * over the state vector instead of one per gate. 2^14 amplitudes are 256 KiB in double precision, size the block to
+     * the L2 cache. 0 applies every gate on its own.
+     *
+     * @param cacheBlockQubits the number of qubits, 0 or more
+     * @throws IllegalArgumentException if the number of qubits is negative
+     */
+    public void setCacheBlockQubits(int cacheBlockQubits) {
+        if (cacheBlockQubits < 0) {
+            throw new IllegalArgumentException("Cache block qubits must not be negative, " + cacheBlockQubits
+                    + " requested.");
+        }
+        this.cacheBlockQubits = cacheBlockQubits;
+    }
+
+    /**
+     * Gets whether consecutive single qubit gates on the same qubit are multiplied into one gate.
+     *
+     * @return true if gates are fused, false by default
+     */
+    public boolean isGateFusion() {
+        return gateFusion;
+    }
+
+    /**
+     * Sets whether consecutive single qubit gates on the same qubit are multiplied into one 2x2 gate before they are
+     * applied, so a run of them makes one pass over the state vector. Fused gates round differently from the same
+     * gates applied one at a time, in the last bits of each amplitude, so fusion is off unless it is asked for.
+     *
+     * @param gateFusion true to fuse gates
+     */
+    public void setGateFusion(boolean gateFusion) {
+        this.gateFusion = gateFusion;
+    }
+
+    /**
+     * Gets the largest number of qubits a block of fused gates may act on.
+     *
+     * @return the number of qubits, 1 by default
+     */
+    public int getFusionQubits() {
+        return fusionQubits;
+    }
+
+    /**
+     * Sets the largest number of qubits a block of fused gates may act on, from 1 to 6. With 1 only single qubit gates
+     * on the same qubit are fused. Above 1 neighbouring single and two qubit gates are merged into blocks on up to this
+     * many qubits, each applied as one 2^k x 2^k operator in one pass over the state vector. A dense block costs 2^k
+     * multiplies per amplitude, 4 or 5 suit deep circuits on large states. Ignored unless gate fusion is on, see
+     * {@link #setGateFusion(boolean)}.
+     *
+     * @param fusionQubits the number of qubits, from 1 to 6
+     * @throws IllegalArgumentException if the number of qubits is not from 1 to 6
+     */
+    public void setFusionQubits(int fusionQubits) {
+        if (fusionQubits < 1 || fusionQubits > 6) {
+            throw new IllegalArgumentException("Fusion qubits must be from 1 to 6, " + fusionQubits + " requested.");
+        }
+        this.fusionQubits = fusionQubits;
+    }
+
+    @Override
+    public String toString() {
+        return "StateOptions{" +
+                "storageMode=" + storageMode +
+                ", hugePages=" + hugePages +
+                ", precision=" + precision +
+                ", mappedDirectory=" + mappedDirectory +
+                ", mappedChunkSize=" + mappedChunkSize +
+                ", heapBlockSize=" + heapBlockSize +
+                ", sparseToDenseThreshold=" + sparseToDenseThreshold +
+                ", denseToSparseThreshold=" + denseToSparseThreshold +
+                ", parallelPool=" + parallelPool +
+                ", parallelThreshold=" + parallelThreshold +
+                ", cacheBlockQubits=" + cacheBlockQubits +
+                ", gateFusion=" + gateFusion +
+                ", fusionQubits=" + fusionQubits +
+                '}';
+    }
+}
@@ -1,28 +1,63 @@
 package state;
 
+import complex_classes.ComplexMath;
 import complex_classes.ComplexMatrix;
 import complex_classes.ComplexNumber;
 import complex_classes.ComplexQubit;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+
 /**
- * The class tracks the state of the quantum system {@link ComplexQubit}s as a column vector stored in a
- * {@link ComplexMatrix} of nx1 dimensions where n is 2 to the power of the number of {@link ComplexQubit}s.
- * This is used to provide the state vector to multiply by gate matrix operators to determine the system state
- * after applying gates.
+ * The class tracks the state of the quantum system {@link ComplexQubit}s as a column vector of 2^n amplitudes where n
+ * is the number of {@link ComplexQubit}s.
+ * <p>
+ * The amplitudes are held in a {@link StateVector} of primitive real and imaginary pairs. By default this is a
+ * {@link DenseStateVector}, a flat double[] on the heap. {@link StateOptions} can select {@link StorageMode#BLOCKED}
+ * heap or {@link StorageMode#OFF_HEAP} storage for state vectors above 2^31 amplitudes, {@link StorageMode#MAPPED}
+ * storage in a scratch file for state vectors larger than RAM, {@link StorageMode#SPARSE} storage of only the nonzero
+ * amplitudes, {@link StorageMode#ADAPTIVE} switching between sparse and dense as the state fills in, and
+ * {@link Precision#SINGLE} to store each amplitude as a pair of floats. The gate kernels read and write the state
+ * through {@link #getState()}, {@link #getReal(long)}, {@link #getImag(long)} and
+ * {@link #setAmplitude(long, double, double)} without allocating.
+ * </p>
+ * <p>
+ * The {@link ComplexMatrix} based methods are kept as a compatibility view. {@link #getStateVec()} returns a copy of
+ * the state in a {@link ComplexMatrix} of nx1 dimensions, changes to the copy are not written back.
+ * </p>
+ * <p>
+ * The gates may leave the qubits of the state vector relabeled, see {@link QubitOrder}. Every method that reads or
+ * writes amplitudes by basis state index moves them back to logical order first, {@link #getState()} does not.
+ * </p>
+ * <p>
+ * Off heap storage is freed, and scratch files deleted, when the tracker is closed or its state vector is replaced.
+ * </p>
  *
  * @author Robert Smith
  * @version 0.1
  * @since 4 July 2024
  */
-public class StateTracker {
-    private ComplexMatrix stateVector;
+public class StateTracker implements AutoCloseable {
+    /**
+     * The number of gates between counts of the nonzero amplitudes of a dense {@link StorageMode#ADAPTIVE} state.
+     */
+    static final int ADAPTIVE_CHECK_INTERVAL = 8;
+    private StateVector state;
+    private StateVector scratch;
+    private StateOptions adaptiveOptions;
+    private int gatesSinceCheck;
+    private ForkJoinPool parallelPool = ForkJoinPool.commonPool();
+    private int parallelThreshold = new StateOptions().getParallelThreshold();
+    private int cacheBlockQubits = new StateOptions().getCacheBlockQubits();
+    private boolean gateFusion = new StateOptions().isGateFusion();
+    private int fusionQubits = new StateOptions().getFusionQubits();
+    private QubitOrder qubitOrder;
 
     /**
      * Default constructor initializes the system state using one qubit set to a 0 real and 0 imag value.
      */
     public StateTracker() {
-        stateVector = new ComplexMatrix(1, 1);
-        stateVector.set(0, 0, new ComplexNumber(0, 0));
+        state = new DenseStateVector(1);
     }
 
     /**
@@ -32,24 +67,80 @@ public class StateTracker {
      * @param numQubits the number of qubits to set up the system with
      */
     public StateTracker(int numQubits) {
-        stateVector = new ComplexMatrix((int) Math.pow(2, numQubits), 1);
-        stateVector.set(0, 0, new ComplexNumber(1, 0));
-        for (int i = 1; i < numQubits; i++) {
-            stateVector.set(i, 0, new ComplexNumber(0, 0));
+        this(numQubits, new StateOptions());
+    }
+
+    /**
+     * Parameterized constructor initializes the system state using the number of qubits provided, stored as
+     * described by the options.
+     *
+     * @param numQubits the number of qubits to set up the system with
+     * @param options   how the state vector is stored
+     */
+    public StateTracker(int numQubits, StateOptions options) {
+        if (numQubits < 0 || numQubits > 62) {
+            throw new IllegalArgumentException("Invalid number of qubits: " + numQubits);
         }
+        state = allocate(1L << numQubits, options);
+        state.set(0, 1, 0);
+        if (options.getStorageMode() == StorageMode.ADAPTIVE) {
+            adaptiveOptions = options;
+        }
+        parallelPool = options.getParallelPool();
+        parallelThreshold = options.getParallelThreshold();
+        cacheBlockQubits = options.getCacheBlockQubits();
+        gateFusion = options.isGateFusion();
+        fusionQubits = options.getFusionQubits();
     }
 
+    /**
+     * Constructs a StateTracker holding a copy of the column vector provided.
+     *
+     * @param matrix the nx1 state vector to copy
+     */
     public StateTracker(ComplexMatrix matrix){
-        this.stateVector = matrix;
+        this.state = toStateVector(matrix);
+    }
+
+    /**
+     * Constructs a StateTracker that takes ownership of the state vector provided.
+     *
+     * @param state the state vector to track
+     */
+    public StateTracker(StateVector state) {
+        this.state = state;
     }
 
+    /**
+     * Create and return a new StateTracker that holds a copy of this state using the same kind of storage.
+     *
+     * @return StateTracker copy of this
+     */
     public StateTracker makeClone(){
-        ComplexMatrix copy = new ComplexMatrix(this.getStateVecSize(), 1);
-        for(int i = 0; i < this.getStateVecSize(); i++){
-            ComplexNumber rowCopy = new ComplexNumber(this.get(i,0).getReal(),this.get(i,0).getImag());
-            copy.set(i,0, rowCopy);
+        restoreQubitOrder();
+        StateTracker clone = new StateTracker(state.copy());
+        clone.parallelPool = parallelPool;
+        clone.parallelThreshold = parallelThreshold;
+        clone.cacheBlockQubits = cacheBlockQubits;
+        clone.gateFusion = gateFusion;
+        clone.fusionQubits = fusionQubits;
+        return clone;
+    }
+
+    /**
+     * Overwrites this state with the amplitudes of another tracker of the same size, reusing the existing storage when
+     * both use the same kind. An adaptive state that has switched kind takes a copy of the other storage instead.
+     *
+     * @param other the tracker to copy from
+     */
+    public void copyFrom(StateTracker other) {
+        other.restoreQubitOrder();
+        qubitOrder = null;
+        if (state.getClass() == other.state.getClass()) {
+            state.copyFrom(other.state);
+        } else {
+            setState(other.state.copy());
         }
-        return new StateTracker(copy);
     }
 
     /**
@@ -64,26 +155,56 @@ public class StateTracker {
      * 3 {@link ComplexQubit} as N means the state vector will be 2 to the 3rd power, resulting in a 8x1
      * {@link ComplexMatrix} state vector.
      * </p>
+     * The returned matrix is a copy, use {@link #setStateVec(ComplexMatrix)} to write a changed state back.
      *
      * @return the current stateVector as a {@link ComplexMatrix} in column vector format.
      */
     public ComplexMatrix getStateVec() {
-        return stateVector;
+        restoreQubitOrder();
+        int size = getStateVecSize();
+        ComplexNumber[][] data = new ComplexNumber[size][1];
+        for (int i = 0; i < size; i++) {
+            data[i][0] = new ComplexNumber(state.getReal(i), state.getImag(i));
+        }
+        return new ComplexMatrix(data);
     }
 
+    /**
+     * Returns the number of basis states in the state vector, 2^n for n qubits, for state vectors small enough to be
+     * viewed as a {@link ComplexMatrix}.
+     *
+     * @return the number of amplitudes in the state vector
+     * @throws ArithmeticException if the state vector holds more than 2^31 - 1 amplitudes, use {@link #getStateLength()}
+     */
     public int getStateVecSize() {
-        return stateVector.getHeight();
+        return Math.toIntExact(state.size());
+    }
+
+    /**
+     * Returns the number of basis states in the state vector, 2^n for n qubits.
+     *
+     * @return the number of amplitudes in the state vector
+     */
+    public long getStateLength() {
+        return state.size();
     }
 
     /**
-     * Setter for the state vector.
+     * Setter for the state vector, copies the amplitudes of the column vector into the tracker.
      *
      * @param newState the new column vector to assign to the system state
      * @return The boolean true if setting the new stateVector was successful or false if it fails.
      */
     public boolean setStateVec(ComplexMatrix newState) {
+        qubitOrder = null;
         try {
-            stateVector.setData(newState.getData());
+            if (newState.getHeight() == state.size()) {
+                for (int i = 0; i < newState.getHeight(); i++) {
+                    state.set(i, newState.get(i, 0).getReal(), newState.get(i, 0).getImag());
+                }
+            } else {
+                setState(toStateVector(newState));
+            }
             return true;
         } catch (Exception e) {
             System.out.println("Setting new state failed.");
@@ -91,8 +212,285 @@ public class StateTracker {
         }
     }
 
+    /**
+     * Returns the live storage of the state vector. Gate kernels mutate it directly. The qubits may be relabeled, call
+     * {@link #restoreQubitOrder()} first to index it by logical basis state.
+     *
+     * @return the state vector of this tracker
+     */
+    public StateVector getState() {
+        return state;
+    }
+
+    /**
+     * Replaces the storage of the state vector without copying it, closing the storage it replaces.
+     *
+     * @param newState the new state vector
+     */
+    public void setState(StateVector newState) {
+        StateVector oldState = this.state;
+        this.state = newState;
+        if (oldState != newState) {
+            oldState.close();
+        }
+        if (scratch != null && !sameStorage(scratch, newState)) {
+            scratch.close();
+            scratch = null;
+        }
+    }
+
+    /**
+     * Returns the scratch state vector an out of place gate writes its result into, using the same kind of storage as
+     * the state. The scratch is allocated on first use and kept, so a circuit allocates it once rather than once per
+     * gate. Its contents are whatever the gate before last left there, a gate must write every amplitude it needs, and
+     * then call {@link #swapScratch()}.
+     *
+     * @return the scratch state vector
+     */
+    public StateVector getScratch() {
+        if (scratch == null || !sameStorage(scratch, state)) {
+            if (scratch != null) {
+                scratch.close();
+            }
+            scratch = state.newEmpty();
+        }
+        return scratch;
+    }
+
+    /**
+     * Returns true if a scratch state vector is allocated, gates applied in place never allocate one.
+     *
+     * @return true if the tracker holds a scratch state vector
+     */
+    public boolean hasScratch() {
+        return scratch != null;
+    }
+
+    /**
+     * Makes the scratch state vector the state and the state the scratch, the two buffers are swapped without copying
+     * or allocating.
+     */
+    public void swapScratch() {
+        StateVector oldState = state;
+        state = getScratch();
+        scratch = oldState;
+    }
+
+    /**
+     * Switches an {@link StorageMode#ADAPTIVE} state between sparse and dense storage when its number of nonzero
+     * amplitudes has crossed a threshold, called after each gate. Other storage modes are left as they are.
+     * <p>
+     * A sparse state knows its nonzero count, so it is checked after every gate. A dense state has to be scanned to
+     * count, so it is checked every {@value #ADAPTIVE_CHECK_INTERVAL} gates. A state is only made dense while a heap
+     * array can hold it.
+     * </p>
+     */
+    public void adaptRepresentation() {
+        if (adaptiveOptions == null) {
+            return;
+        }
+        long size = state.size();
+        if (state instanceof SparseStateVector sparse) {
+            if (sparse.nonZeroCount() > size * adaptiveOptions.getSparseToDenseThreshold()
+                    && getQubitCount() <= DenseStateVector.MAX_QUBITS) {
+                StateVector dense = adaptiveOptions.getPrecision() == Precision.SINGLE
+                        ? new FloatStateVector(size) : new DenseStateVector(size);
+                for (long index : sparse.storedIndices()) {
+                    dense.set(index, sparse.getReal(index), sparse.getImag(index));
+                }
+                setState(dense);
+                gatesSinceCheck = 0;
+            }
+        } else if (++gatesSinceCheck >= ADAPTIVE_CHECK_INTERVAL) {
+            gatesSinceCheck = 0;
+            long nonZero = 0;
+            for (long i = 0; i < size; i++) {
+                if (state.getReal(i) != 0.0 || state.getImag(i) != 0.0) {
+                    nonZero++;
+                }
+            }
+            if (nonZero < size * adaptiveOptions.getDenseToSparseThreshold()) {
+                SparseStateVector sparse = new SparseStateVector(size);
+                for (long i = 0; i < size; i++) {
+                    sparse.set(i, state.getReal(i), state.getImag(i));
+                }
+                setState(sparse);
+            }
+        }
+    }
+
+    /**
+     * Returns the state in Dirac notation, see {@link ComplexMath#complexMatrixToDiracNotation(ComplexMatrix, double)}.
+     * A sparse state is printed from its stored amplitudes without building the 2^n column vector.
+     *
+     * @return the Dirac notation of the state
+     */
+    public String toDiracNotation() {
+        restoreQubitOrder();
+        double tolerance = getPrecision().getDisplayTolerance();
+        if (state instanceof SparseStateVector sparse) {
+            long[] basisStates = sortedStoredIndices(sparse);
+            return ComplexMath.sparseToDiracNotation(basisStates, realParts(basisStates), imagParts(basisStates),
+                    getQubitCount(), tolerance);
+        }
+        return ComplexMath.complexMatrixToDiracNotation(getStateVec(), tolerance);
+    }
+
+    /**
+     * Returns the basis states of the state separated by $, see
+     * {@link ComplexMath#complexMatrixToBasisStates(ComplexMatrix, double)}. A sparse state is printed from its stored
+     * amplitudes without building the 2^n column vector.
+     *
+     * @return the basis states with a nonzero amplitude
+     */
+    public String toBasisStates() {
+        restoreQubitOrder();
+        double tolerance = getPrecision().getDisplayTolerance();
+        if (state instanceof SparseStateVector sparse) {
+            long[] basisStates = sortedStoredIndices(sparse);
+            return ComplexMath.sparseToBasisStates(basisStates, realParts(basisStates), imagParts(basisStates),
+                    getQubitCount(), tolerance);
+        }
+        return ComplexMath.complexMatrixToBasisStates(getStateVec(), tolerance);
+    }
+
+    /**
+     * Returns the precision the amplitudes of this state are stored in.
+     *
+     * @return the storage precision
+     */
+    public Precision getPrecision() {
+        return state.precision();
+    }
+
+    /**
+     * Gets the real part of the amplitude of the basis state.
+     *
+     * @param index the basis state, 0 based indexing
+     * @return the real part of the amplitude
+     */
+    public double getReal(long index) {
+        restoreQubitOrder();
+        return state.getReal(index);
+    }
+
+    /**
+     * Gets the imaginary part of the amplitude of the basis state.
+     *
+     * @param index the basis state, 0 based indexing
+     * @return the imaginary part of the amplitude
+     */
+    public double getImag(long index) {
+        restoreQubitOrder();
+        return state.getImag(index);
+    }
+
+    /**
+     * Sets the amplitude of the basis state.
+     *
+     * @param index the basis state, 0 based indexing
+     * @param real  the real part of the amplitude
+     * @param imag  the imaginary part of the amplitude
+     */
+    public void setAmplitude(long index, double real, double imag) {
+        restoreQubitOrder();
+        state.set(index, real, imag);
+    }
+
+    /**
+     * Releases the state vector storage and its scratch, off heap memory is freed immediately.
+     */
+    @Override
+    public void close() {
+        state.close();
+        if (scratch != null) {
+            scratch.close();
+            scratch = null;
+        }
+    }
+
     public int getQubitCount(){
-        return (int) (Math.log(stateVector.getHeight()) / Math.log(2));
+        return Long.numberOfTrailingZeros(state.size());
+    }
+
+    /**
+     * Gets the pool the dense gate kernels split their work across, see {@link StateOptions#setParallelPool}.
+     *
+     * @return the pool
+     */
+    public ForkJoinPool getParallelPool() {
+        return parallelPool;
+    }
+
+    /**
+     * Gets the number of qubits from which the dense gate kernels run in parallel, see
+     * {@link StateOptions#setParallelThreshold(int)}.
+     *
+     * @return the number of qubits
+     */
+    public int getParallelThreshold() {
+        return parallelThreshold;
+    }
+
+    /**
+     * Gets the number of low qubits whose amplitudes form one cache block for runs of gates, see
+     * {@link StateOptions#setCacheBlockQubits(int)}.
+     *
+     * @return the number of qubits
+     */
+    public int getCacheBlockQubits() {
+        return cacheBlockQubits;
+    }
+
+    /**
+     * Gets whether consecutive single qubit gates on the same qubit are fused into one, see
+     * {@link StateOptions#setGateFusion(boolean)}.
+     *
+     * @return true if gates are fused
+     */
+    public boolean isGateFusion() {
+        return gateFusion;
+    }
+
+    /**
+     * Gets the largest number of qubits a block of fused gates may act on, see
+     * {@link StateOptions#setFusionQubits(int)}.
+     *
+     * @return the number of qubits
+     */
+    public int getFusionQubits() {
+        return fusionQubits;
+    }
+
+    /**
+     * Gets the relabeling of the qubits the state vector is stored in, if any.
+     *
+     * @return the relabeling, or null if every qubit is held by the bit of its own index
+     */
+    public QubitOrder getQubitOrder() {
+        return qubitOrder;
+    }
+
+    /**
+     * Records that the gates left the qubits of the state vector relabeled. The amplitudes are moved back the next
+     * time they are read or written by basis state index.
+     *
+     * @param qubitOrder the relabeling, or null once every qubit is held by the bit of its own index again
+     */
+    public void setQubitOrder(QubitOrder qubitOrder) {
+        this.qubitOrder = qubitOrder;
+    }
+
+    /**
+     * Moves the amplitudes of a relabeled state vector back to logical order, so basis state i of
+     * {@link #getState()} is basis state i of the circuit. Does nothing if the qubits are not relabeled.
+     */
+    public void restoreQubitOrder() {
+        if (qubitOrder != null) {
+            QubitOrder pending = qubitOrder;
+            qubitOrder = null;
+            pending.restore();
+        }
     }
 
     /**
@@ -112,6 +510,7 @@ public class StateTracker {
      * @throws IllegalArgumentException If the dimensions of the stateVector are not Nx1, or if N is not a power of 2.
      */
     public ComplexMatrix stateVectorToQubits() {
+        ComplexMatrix stateVector = getStateVec();
         int rows = stateVector.getHeight();
         int cols = stateVector.getWidth();
 
@@ -140,12 +539,83 @@ public class StateTracker {
     }
 
     /**
-     * Gets and returns the ComplexNumber located at the specified row and index in teh state vector
+     * Gets and returns a copy of the ComplexNumber located at the specified row and index in teh state vector
      * @param row the row, 0 based indexing, of where to get
      * @param column the column to get, will usually be 0
      * @return returns the ComplexNumber found
      */
     public ComplexNumber get(int row, int column) {
-        return stateVector.get(row, column);
+        if (column != 0) {
+            throw new IndexOutOfBoundsException("State vector has a single column.");
+        }
+        restoreQubitOrder();
+        return new ComplexNumber(state.getReal(row), state.getImag(row));
+    }
+
+    /**
+     * Allocates a zeroed state vector using the storage selected by the options.
+     *
+     * @param size    the number of amplitudes
+     * @param options how the state vector is stored
+     * @return the new state vector
+     */
+    private static StateVector allocate(long size, StateOptions options) {
+        boolean single = options.getPrecision() == Precision.SINGLE;
+        return switch (options.getStorageMode()) {
+            case HEAP -> single ? new FloatStateVector(size) : new DenseStateVector(size);
+            case BLOCKED -> new BlockStateVector(size, options.getHeapBlockSize(), options.getPrecision());
+            case OFF_HEAP -> new OffHeapStateVector(size, options.isHugePages(), options.getPrecision());
+            case MAPPED -> new MappedStateVector(size, options.getMappedDirectory(), options.getMappedChunkSize(),
+                    options.getPrecision());
+            case SPARSE, ADAPTIVE -> new SparseStateVector(size);
+        };
+    }
+
+    /**
+     * Returns true if the two state vectors use the same kind of storage with the same size and layout, so one can
+     * stand in for the other.
+     */
+    private static boolean sameStorage(StateVector first, StateVector second) {
+        return first.getClass() == second.getClass() && first.size() == second.size()
+                && first.precision() == second.precision() && first.chunkBits() == second.chunkBits();
+    }
+
+    private static long[] sortedStoredIndices(SparseStateVector sparse) {
+        long[] basisStates = sparse.storedIndices();
+        Arrays.sort(basisStates);
+        return basisStates;
+    }
+
+    private double[] realParts(long[] basisStates) {
+        double[] result = new double[basisStates.length];
+        for (int i = 0; i < basisStates.length; i++) {
+            result[i] = state.getReal(basisStates[i]);
+        }
+        return result;
+    }
+
+    private double[] imagParts(long[] basisStates) {
+        double[] result = new double[basisStates.length];
+        for (int i = 0; i < basisStates.length; i++) {
+            result[i] = state.getImag(basisStates[i]);
+        }
+        return result;
+    }
+
+    /**
+     * Copies a column vector into a new heap state vector.
+     *
+     * @param matrix the nx1 column vector to copy
+     * @return the state vector holding the amplitudes of the column vector
+     */
+    private static StateVector toStateVector(ComplexMatrix matrix) {
+        if (matrix.getWidth() != 1) {
+            throw new IllegalArgumentException("State vector must be a column vector");
+        }
+        StateVector result = new DenseStateVector(matrix.getHeight());
+        for (int i = 0; i < matrix.getHeight(); i++) {
+            result.set(i, matrix.get(i, 0).getReal(), matrix.get(i, 0).getImag());
+        }
+        return result;
     }
 }
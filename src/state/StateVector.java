@@ -0,0 +1,124 @@
+package state;
+
+/**
+ * Storage for the amplitudes of a quantum state vector of 2^n basis states.
+ * <p>
+ * Implementations hold the amplitudes as primitive real and imaginary pairs and are read and written by the gate
+ * kernels through {@link #getReal(long)}, {@link #getImag(long)} and {@link #set(long, double, double)} without
+ * allocating. Basis states are indexed with a long so storage that is not backed by a single Java array can hold more
+ * than 2^31 amplitudes.
+ * </p>
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ * @see DenseStateVector
+ * @see FloatStateVector
+ * @see BlockStateVector
+ * @see OffHeapStateVector
+ * @see MappedStateVector
+ */
+public interface StateVector extends AutoCloseable {
+
+    /**
+     * Returns the number of basis states held, 2^n for n qubits.
+     *
+     * @return the number of amplitudes in the state vector
+     */
+    long size();
+
+    /**
+     * Gets the real part of the amplitude of the basis state.
+     *
+     * @param index the basis state, 0 based indexing
+     * @return the real part of the amplitude
+     */
+    double getReal(long index);
+
+    /**
+     * Gets the imaginary part of the amplitude of the basis state.
+     *
+     * @param index the basis state, 0 based indexing
+     * @return the imaginary part of the amplitude
+     */
+    double getImag(long index);
+
+    /**
+     * Sets the amplitude of the basis state.
+     *
+     * @param index the basis state, 0 based indexing
+     * @param real  the real part of the amplitude
+     * @param imag  the imaginary part of the amplitude
+     */
+    void set(long index, double real, double imag);
+
+    /**
+     * Returns the precision the amplitudes are stored in. Values passed to {@link #set(long, double, double)} are
+     * rounded to this precision.
+     *
+     * @return the storage precision
+     */
+    default Precision precision() {
+        return Precision.DOUBLE;
+    }
+
+    /**
+     * Returns log2 of the number of consecutive amplitudes stored together in one chunk. Gate kernels keep their work
+     * inside one chunk at a time, or one pair of chunks for gates on qubits at or above this, and then pass the chunk
+     * to {@link #releaseChunk(long)}. Storage that is not chunked is a single chunk.
+     *
+     * @return the number of qubits addressed within one chunk
+     */
+    default int chunkBits() {
+        return Long.numberOfTrailingZeros(size());
+    }
+
+    /**
+     * Tells the storage a kernel has finished with a chunk for now. Storage that pages chunks in and out may evict it,
+     * other storage ignores the call.
+     *
+     * @param chunk the index of the chunk, basis state index &gt;&gt; {@link #chunkBits()}
+     */
+    default void releaseChunk(long chunk) {
+    }
+
+    /**
+     * Allocates a new zeroed state vector of the same size using the same kind of storage.
+     *
+     * @return the new state vector with every amplitude set to 0
+     */
+    StateVector newEmpty();
+
+    /**
+     * Overwrites every amplitude of this state vector with the amplitudes of another of the same size.
+     *
+     * @param other the state vector to copy from
+     */
+    default void copyFrom(StateVector other) {
+        if (other.size() != size()) {
+            throw new IllegalArgumentException("State vector sizes do not match: " + size() + " and " + other.size());
+        }
+        for (long i = 0; i < size(); i++) {
+            set(i, other.getReal(i), other.getImag(i));
+        }
+    }
+
+    /**
+     * Allocates a new state vector using the same kind of storage holding a copy of these amplitudes.
+     *
+     * @return the copy
+     */
+    default StateVector copy() {
+        StateVector copy = newEmpty();
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Releases the storage held by this state vector. Heap storage is left to the garbage collector, off heap storage
+     * is freed immediately and must not be used afterward.
+     */
+    @Override
+    default void close() {
+    }
+}
@@ -0,0 +1,46 @@
+package state;
+
+/**
+ * Where a {@link StateTracker} keeps the amplitudes of the state vector.
+ *
+ * @author Robert Smith
+ * @version 0.1
+ * @since 17 October 2026
+ */
+public enum StorageMode {
+    /**
+     * A primitive double[] on the Java heap, see {@link DenseStateVector}. Supports up to 29 qubits.
+     */
+    HEAP,
+
+    /**
+     * Fixed size blocks of primitive arrays on the Java heap, see {@link BlockStateVector}. Supports state vectors above
+     * 2^31 amplitudes as far as the heap allows.
+     */
+    BLOCKED,
+
+    /**
+     * Native memory outside the Java heap, see {@link OffHeapStateVector}. Supports state vectors above 2^31
+     * amplitudes and is freed when the tracker is closed.
+     */
+    OFF_HEAP,
+
+    /**
+     * A scratch file mapped into memory in chunks, see {@link MappedStateVector}. Supports state vectors larger than
+     * RAM at the speed of the disk, the file is deleted when the tracker is closed.
+     */
+    MAPPED,
+
+    /**
+     * Only the nonzero amplitudes in a primitive hash table, see {@link SparseStateVector}. Memory and gate time scale
+     * with the number of nonzero amplitudes, supporting up to 62 qubits for states with a small support. Always double
+     * precision.
+     */
+    SPARSE,
+
+    /**
+     * Starts sparse and switches between {@link SparseStateVector} and a heap dense state vector as the number of
+     * nonzero amplitudes crosses the thresholds in {@link StateOptions}, in both directions.
+     */
+    ADAPTIVE
+}
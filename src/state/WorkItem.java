@@ -1,15 +1,24 @@
 package state;
 
+import complex_classes.ComplexMatrix;
+
 /**
  * Represents a work item with an operator and associated control and target values.
  * This class can handle both single control/target and multiple controls/targets scenarios.
+ * A work item may also carry its operator as a matrix, e.g. several gates fused into one, under the operator name
+ * {@value #UNITARY}.
  *
  * @author Robert Smith
  * @version 0.1
  * @since 4 July 2024
  */
 public class WorkItem {
+    /**
+     * The operator name of a work item that carries its operator matrix, see {@link #getMatrix()}.
+     */
+    public static final String UNITARY = "U";
     private String operator;
+    private GateOpcode opcode;
     private int control;
     private int target;
     private Integer[] controls;
@@ -18,6 +27,7 @@ public class WorkItem {
     private boolean singleQubit;
     private boolean dualQubit;
     private boolean multiQubit;
+    private ComplexMatrix matrix;
 
     /**
      * Constructs a WorkItem with a single target.
@@ -28,6 +38,7 @@ public class WorkItem {
      */
     public WorkItem(String operator, int target) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
         this.target = target;
         this.singleQubit = true;
         this.dualQubit = false;
@@ -44,6 +55,7 @@ public class WorkItem {
      */
     public WorkItem(String operator, int target, double theta) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
         this.target = target;
         this.theta = theta;
         this.singleQubit = true;
@@ -51,6 +63,31 @@ public class WorkItem {
         this.multiQubit = false;
     }
 
+    /**
+     * Constructs a WorkItem that applies a 2x2 operator matrix to a single target.
+     *
+     * @param matrix The 2x2 operator.
+     * @param target The target value.
+     * @see #getMatrix()
+     */
+    public WorkItem(ComplexMatrix matrix, int target) {
+        this(UNITARY, target);
+        this.matrix = matrix;
+    }
+
+    /**
+     * Constructs a WorkItem that applies a 2^k x 2^k operator matrix to k targets, the first target is the high bit of
+     * the row and column index of the operator.
+     *
+     * @param matrix  The 2^k x 2^k operator.
+     * @param targets The k target values.
+     * @see #getMatrix()
+     */
+    public WorkItem(ComplexMatrix matrix, Integer[] targets) {
+        this(UNITARY, new Integer[0], targets);
+        this.matrix = matrix;
+    }
+
     /**
      * Constructs a WorkItem with single control and single target.
      *
@@ -61,6 +98,7 @@ public class WorkItem {
      */
     public WorkItem(String operator, int control, int target) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
         this.control = control;
         this.target = target;
         this.singleQubit = false;
@@ -81,6 +119,7 @@ public class WorkItem {
      */
     public WorkItem(String operator, int control, int target, double theta) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
         this.control = control;
         this.target = target;
         this.theta = theta;
@@ -100,6 +139,7 @@ public class WorkItem {
      */
     public WorkItem(String operator, int control, int targetOne, int targetTwo) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
         this.controls = new Integer[]{control};
         this.targets = new Integer[]{targetOne, targetTwo};
         this.singleQubit = false;
@@ -117,6 +157,7 @@ public class WorkItem {
      */
     public WorkItem(String operator, Integer[] controls, Integer[] targets) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
         this.controls = controls;
         this.targets = targets;
         this.singleQubit = false;
@@ -134,6 +175,16 @@ public class WorkItem {
         return operator;
     }
 
+    /**
+     * Gets the opcode the operator names, which carries the properties of the gate.
+     *
+     * @return The opcode, or null if the operator names no gate.
+     * @see GateOpcode#of(String)
+     */
+    public GateOpcode getOpcode() {
+        return opcode;
+    }
+
     /**
      * Gets the single control value.
      *
@@ -214,6 +265,7 @@ public class WorkItem {
      */
     public void setOperator(String operator) {
         this.operator = operator;
+        this.opcode = GateOpcode.of(operator);
     }
 
     /**
@@ -301,6 +353,15 @@ public class WorkItem {
         return result;
     }
 
+    /**
+     * Gets the operator matrix of a {@value #UNITARY} work item.
+     *
+     * @return the operator, or null if the operator is named by {@link #getOperator()}
+     */
+    public ComplexMatrix getMatrix() {
+        return matrix;
+    }
+
     /**
      * Returns the theta value of this WorkItem object
      * @return the double value of this WorkItem's theta field
@@ -13,6 +13,10 @@ import static supportClasses.GreekEnums.*;
 
 /**
  * Represents a sparse matrix using a map of maps to store non-zero values.
+ * <p>
+ * Every put and set condenses the whole matrix, so building one costs O(nnz^2). For sparse state vectors use
+ * {@link state.SparseStateVector}, selected with {@link state.StorageMode#SPARSE}.
+ * </p>
  *
  * @author Robert Smith
  * @version 0.1